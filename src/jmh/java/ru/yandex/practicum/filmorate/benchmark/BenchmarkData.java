@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorageImpl;
+import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorageImpl;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Заполняет базу приложения тестовыми данными заданного объема. Лайки распределены неравномерно:
+ * небольшая часть фильмов собирает большую часть лайков, как в реальном каталоге.
+ */
+final class BenchmarkData {
+    private static final int BATCH_SIZE = 1_000;
+
+    final long[] filmIds;
+    final long[] userIds;
+
+    private BenchmarkData(long[] filmIds, long[] userIds) {
+        this.filmIds = filmIds;
+        this.userIds = userIds;
+    }
+
+    static BenchmarkData seed(ApplicationContext context, int films, int users, int likesPerUser,
+                              int friendsPerUser) {
+        Random random = new Random(42);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        List<User> newUsers = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = User.builder().email("user" + i + "@mail.ru").login("login" + i).name("name" + i)
+                    .birthday(LocalDate.of(1970 + i % 40, 1 + i % 12, 1 + i % 28)).build();
+            user.setFriendsStatuses(new HashMap<>());
+            newUsers.add(user);
+        }
+        long[] userIds = context.getBean(UserStorage.class).createUsers(newUsers).stream()
+                .mapToLong(User::getId).toArray();
+
+        List<Film> newFilms = new ArrayList<>(films);
+        for (int i = 0; i < films; i++) {
+            Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId));
+            genres.add(new Genre(1 + i % 6));
+            genres.add(new Genre(1 + (i / 6) % 6));
+            Film film = Film.builder().name("film" + i).description("description of film " + i)
+                    .releaseDate(LocalDate.of(1950 + i % 70, 1 + i % 12, 1 + i % 28)).duration(60 + i % 120)
+                    .mpa(new Rating(1 + i % 5)).genres(genres).likes(new HashSet<>()).build();
+            newFilms.add(film);
+        }
+        List<Long> ids = context.getBean(FilmStorage.class).createFilms(newFilms);
+        for (int i = 0; i < films; i++) {
+            newFilms.get(i).setId(ids.get(i));
+        }
+        context.getBean(GenreStorage.class).createGenres(newFilms);
+        long[] filmIds = ids.stream().mapToLong(Long::longValue).toArray();
+
+        List<long[]> likes = new ArrayList<>();
+        for (long userId : userIds) {
+            Set<Long> liked = new HashSet<>();
+            while (liked.size() < Math.min(likesPerUser, films)) {
+                double skewed = random.nextDouble() * random.nextDouble();
+                liked.add(filmIds[(int) (skewed * films)]);
+            }
+            liked.forEach(filmId -> likes.add(new long[]{filmId, userId}));
+        }
+        jdbcTemplate.batchUpdate("insert into likes(film_id, user_id) values (?, ?)", likes, BATCH_SIZE,
+                (ps, like) -> {
+                    ps.setLong(1, like[0]);
+                    ps.setLong(2, like[1]);
+                });
+        jdbcTemplate.update("update films as f set like_count = " +
+                "(select count(*) from likes as l where l.film_id = f.film_id)");
+
+        List<long[]> friendships = new ArrayList<>();
+        for (long userId : userIds) {
+            Set<Long> friends = new HashSet<>();
+            while (friends.size() < Math.min(friendsPerUser, users - 1)) {
+                long friendId = userIds[random.nextInt(users)];
+                if (friendId != userId) {
+                    friends.add(friendId);
+                }
+            }
+            friends.forEach(friendId -> friendships.add(new long[]{userId, friendId}));
+        }
+        jdbcTemplate.batchUpdate("insert into friendship_statuses(user_id, friend_id, status) " +
+                "values (?, ?, 'CONFIRMED')", friendships, BATCH_SIZE, (ps, friendship) -> {
+                    ps.setLong(1, friendship[0]);
+                    ps.setLong(2, friendship[1]);
+                });
+
+        context.getBean(PopularityLeaderboard.class).rebuild();
+        context.getBean(FriendshipStorageImpl.class).rebuildIndex();
+        context.getBean(LikeStorageImpl.class).rebuildIndex();
+        CacheManager cacheManager = context.getBean(CacheManager.class);
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        return new BenchmarkData(filmIds, userIds);
+    }
+}
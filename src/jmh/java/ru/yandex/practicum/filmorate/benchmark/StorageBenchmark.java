@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры горячих путей хранилищ на базе H2 в памяти, заполненной {@link BenchmarkData}.
+ * Запуск: {@code mvn -Pbenchmark verify}, результаты пишутся в {@code target/jmh-result.json}.
+ * Объемы и набор замеров задаются через {@code -Djmh.args}, например
+ * {@code -Djmh.args="getTopFilms -p films=100000 -p users=10000 -rf json -rff target/jmh-result.json"}.
+ * Схему можно собрать не до последней миграции, например {@code -p schemaVersion=2,latest} сравнивает
+ * выборки по таблицам связей без первичных ключей и обратных индексов V3 и с ними.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class StorageBenchmark {
+    @Param("1000")
+    public int films;
+    @Param("1000")
+    public int users;
+    @Param("20")
+    public int likesPerUser;
+    @Param("20")
+    public int friendsPerUser;
+    @Param({"caffeine", "none"})
+    public String cacheType;
+    @Param("latest")
+    public String schemaVersion;
+
+    private ConfigurableApplicationContext context;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private LikeStorage likeStorage;
+    private PopularityLeaderboard leaderboard;
+    private BenchmarkData data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:filmorate-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.cache.type=" + cacheType,
+                        "--spring.flyway.target=" + schemaVersion,
+                        "--logging.level.root=warn");
+        filmStorage = context.getBean(FilmStorage.class);
+        userStorage = context.getBean(UserStorage.class);
+        likeStorage = context.getBean(LikeStorage.class);
+        leaderboard = context.getBean(PopularityLeaderboard.class);
+        data = BenchmarkData.seed(context, films, users, likesPerUser, friendsPerUser);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Film> findAllFilms() {
+        return filmStorage.findAllFilms();
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms() {
+        return filmStorage.getTopFilms(10);
+    }
+
+    @Benchmark
+    public List<Long> getTopFilmIds() {
+        return leaderboard.getTopFilmIds(10);
+    }
+
+    @Benchmark
+    public List<Long> getTopFilmIdsByGenreAndYear() {
+        return leaderboard.getTopFilmIds(10, 1, 1990);
+    }
+
+    @Benchmark
+    public Film findFilmById() {
+        return filmStorage.findFilmById(randomFilmId());
+    }
+
+    @Benchmark
+    public List<User> getFriendsList() {
+        return userStorage.getFriendsList(randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userStorage.getCommonFriends(randomUserId(), randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestions() {
+        return userStorage.getFriendSuggestions(randomUserId(), 10);
+    }
+
+    @Benchmark
+    public long[] getRecommendedFilmIds() {
+        return likeStorage.getRecommendedFilmIds(randomUserId(), 10);
+    }
+
+    @Benchmark
+    public Set<Long> getLikes() {
+        return likeStorage.getLikes(randomFilmId());
+    }
+
+    @Benchmark
+    public Set<Long> getLikedFilmIds() {
+        return likeStorage.getLikedFilmIds(randomUserId());
+    }
+
+    /**
+     * Лайк сразу снимается, чтобы объем данных не менялся между итерациями; в замер входят обе операции.
+     */
+    @Benchmark
+    public boolean addLike() {
+        long filmId = randomFilmId();
+        long userId = randomUserId();
+        boolean added = likeStorage.addLike(filmId, userId);
+        if (added) {
+            likeStorage.deleteLike(filmId, userId);
+        }
+        return added;
+    }
+
+    private long randomFilmId() {
+        return data.filmIds[ThreadLocalRandom.current().nextInt(data.filmIds.length)];
+    }
+
+    private long randomUserId() {
+        return data.userIds[ThreadLocalRandom.current().nextInt(data.userIds.length)];
+    }
+}
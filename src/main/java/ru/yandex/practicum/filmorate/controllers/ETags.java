@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+final class ETags {
+    private ETags() {
+    }
+
+    static String of(long version) {
+        return "\"" + Long.toString(version, Character.MAX_RADIX) + "\"";
+    }
+
+    // If-None-Match сравнивается по слабому правилу: W/"x" совпадает с "x", а * - с любой версией
+    static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+}
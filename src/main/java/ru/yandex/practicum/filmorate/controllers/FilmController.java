@@ -1,35 +1,47 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.film.FilmServiceImpl;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 
 @Slf4j
 @Controller
+@Validated
 @RequestMapping("/films")
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectWriter ndjsonWriter;
 
     @Autowired
-    public FilmController(FilmServiceImpl filmService) {
+    public FilmController(FilmServiceImpl filmService, ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.ndjsonWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
     @PostMapping
@@ -42,6 +54,16 @@ public class FilmController {
                 .body(newFilm);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<List<Long>> createFilms(@RequestBody List<@Valid Film> films) {
+        log.info("запрос на пакетное добавление фильмов. Кол-во фильмов: {}", films.size());
+        List<Long> ids = filmService.createFilms(films);
+        log.info("добавлено фильмов: {}", ids.size());
+        return ResponseEntity.status(201)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ids);
+    }
+
     @PutMapping
     public ResponseEntity<Film> updateFilm(@Valid @RequestBody Film film) {
         log.info("запрос на обновление фильма: {}", film);
@@ -52,21 +74,57 @@ public class FilmController {
     }
 
     @GetMapping
-    public ResponseEntity<Collection<Film>> getAllFilms() {
-        log.info("запрос на получение всех фильмов");
-        Collection<Film> films = filmService.getAllFilms();
-        log.info("фильмы получены. Кол-во фильмов: {}", films.size());
+    public ResponseEntity<Collection<Film>> getAllFilms(@RequestParam(required = false) String after,
+                                                        @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("запрос на получение всех фильмов");
+            Collection<Film> films = filmService.getAllFilms();
+            log.info("фильмы получены. Кол-во фильмов: {}", films.size());
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(films);
+        }
+        int pageSize = PageCursor.checkLimit(limit);
+        log.info("запрос на получение страницы фильмов после курсора {}, размер страницы {}", after, pageSize);
+        List<Film> films = filmService.getFilms(PageCursor.decode(after), pageSize);
+        log.info("страница фильмов получена. Кол-во фильмов: {}", films.size());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (films.size() == pageSize) {
+            response.header(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode(films.get(films.size() - 1).getId()));
+        }
+        return response.body(films);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        log.info("запрос на выгрузку всех фильмов в формате NDJSON");
+        StreamingResponseBody body = out -> filmService.exportFilms(film -> {
+            try {
+                ndjsonWriter.writeValue(out, film);
+                out.write('\n');
+            } catch (IOException exp) {
+                throw new UncheckedIOException(exp);
+            }
+        });
         return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(films);
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Film> getFilmById(@PathVariable long id) {
+    public ResponseEntity<Film> getFilmById(@PathVariable long id,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                            String ifNoneMatch) {
         log.info("запрос на получение фильма по id: {}", id);
+        // версия читается до данных: если фильм изменится между ними, следующий запрос все равно получит 200
+        String eTag = ETags.of(filmService.getFilmVersion(id));
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            log.info("фильм под id {} не изменился", id);
+            return ETags.notModified(eTag);
+        }
         Film film = filmService.getFilmById(id);
         log.info("получен фильм под id: {}", id);
-        return ResponseEntity.ok(film);
+        return ResponseEntity.ok().eTag(eTag).body(film);
     }
 
     @DeleteMapping("/{id}")
@@ -101,11 +159,30 @@ public class FilmController {
         return ResponseEntity.ok().body("Лайк удален.");
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<List<Film>> searchFilms(@RequestParam String query,
+                                                  @RequestParam(defaultValue = "title,description") String by,
+                                                  @RequestParam(defaultValue = "10") int count) {
+        log.info("запрос на поиск фильмов по строке \"{}\" в полях {}", query, by);
+        List<Film> films = filmService.searchFilms(query, by, count);
+        log.info("найдено фильмов: {}", films.size());
+        return ResponseEntity.ok(films);
+    }
+
     @GetMapping("/popular")
-    public ResponseEntity<List<Film>> getTopFilms(@RequestParam(defaultValue = "10") int count) {
-        log.info("запрос на получение самых популярных фильмов");
-        List<Film> topFilms = filmService.getTopFilms(count);
+    public ResponseEntity<List<Film>> getTopFilms(@RequestParam(defaultValue = "10") int count,
+                                                  @RequestParam(required = false) Integer genreId,
+                                                  @RequestParam(required = false) Integer year,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                  String ifNoneMatch) {
+        log.info("запрос на получение самых популярных фильмов. Жанр: {}, год: {}", genreId, year);
+        String eTag = ETags.of(filmService.getTopFilmsVersion());
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            log.info("список самых популярных фильмов не изменился");
+            return ETags.notModified(eTag);
+        }
+        List<Film> topFilms = filmService.getTopFilms(count, genreId, year);
         log.info("Получен список самых популярных фильмов: {}", topFilms);
-        return ResponseEntity.ok(topFilms);
+        return ResponseEntity.ok().eTag(eTag).body(topFilms);
     }
 }
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+final class PageCursor {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    private static final String PREFIX = "id:";
+
+    private PageCursor() {
+    }
+
+    static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new ValidationException("некорректный курсор: " + cursor);
+            }
+            return Long.parseLong(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException exp) {
+            throw new ValidationException("некорректный курсор: " + cursor);
+        }
+    }
+
+    static int checkLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ": " + limit);
+        }
+        return limit;
+    }
+}
@@ -2,16 +2,21 @@ package ru.yandex.practicum.filmorate.controllers;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.user.UserServiceImpl;
 import ru.yandex.practicum.filmorate.service.user.UserService;
@@ -22,6 +27,7 @@ import java.util.List;
 
 @Slf4j
 @Controller
+@Validated
 @RequestMapping("/users")
 public class UserController {
     private final UserService userService;
@@ -40,6 +46,16 @@ public class UserController {
                 .contentType(MediaType.APPLICATION_JSON).body(newUser);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<List<Long>> createUsers(@RequestBody List<@Valid User> users) {
+        log.info("запрос на пакетное добавление пользователей. Кол-во пользователей: {}", users.size());
+        List<Long> ids = userService.createUsers(users);
+        log.info("добавлено пользователей: {}", ids.size());
+        return ResponseEntity.status(201)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ids);
+    }
+
     @PutMapping
     public ResponseEntity<User> updateUser(@Valid @RequestBody User user) {
         log.info("запрос на обновление пользователя: {}", user);
@@ -50,21 +66,40 @@ public class UserController {
     }
 
     @GetMapping
-    public ResponseEntity<Collection<User>> getAllUsers() {
-        log.info("запрос на получение всех пользователей");
-        Collection<User> users = userService.getAllUsers();
-        log.info("пользователи получены. Кол-во пользователей: {}", users.size());
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(users);
+    public ResponseEntity<Collection<User>> getAllUsers(@RequestParam(required = false) String after,
+                                                        @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            log.info("запрос на получение всех пользователей");
+            Collection<User> users = userService.getAllUsers();
+            log.info("пользователи получены. Кол-во пользователей: {}", users.size());
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(users);
+        }
+        int pageSize = PageCursor.checkLimit(limit);
+        log.info("запрос на получение страницы пользователей после курсора {}, размер страницы {}", after, pageSize);
+        List<User> users = userService.getUsers(PageCursor.decode(after), pageSize);
+        log.info("страница пользователей получена. Кол-во пользователей: {}", users.size());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (users.size() == pageSize) {
+            response.header(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode(users.get(users.size() - 1).getId()));
+        }
+        return response.body(users);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable long id) {
+    public ResponseEntity<User> getUserById(@PathVariable long id,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                            String ifNoneMatch) {
         log.info("запрос на получение пользователя по id: {}", id);
+        String eTag = ETags.of(userService.getUserVersion(id));
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            log.info("пользователь под id {} не изменился", id);
+            return ETags.notModified(eTag);
+        }
         User user = userService.getUserById(id);
         log.info("получен пользователь под id: {}", id);
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok().eTag(eTag).body(user);
     }
 
     @DeleteMapping("/{id}")
@@ -100,11 +135,18 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public ResponseEntity<List<User>> getFriendsList(@PathVariable long id) {
+    public ResponseEntity<List<User>> getFriendsList(@PathVariable long id,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH,
+                                                             required = false) String ifNoneMatch) {
         log.info("запрос на получение всех друзей пользователя с id {}", id);
+        String eTag = ETags.of(userService.getFriendsListVersion(id));
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            log.info("список друзей пользователя под id {} не изменился", id);
+            return ETags.notModified(eTag);
+        }
         List<User> friends = userService.getFriendsList(id);
         log.info("все друзья пользователя под id {}: {}", id, friends);
-        return ResponseEntity.ok(friends);
+        return ResponseEntity.ok().eTag(eTag).body(friends);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
@@ -114,4 +156,22 @@ public class UserController {
         log.info("общие друзья у пользователя {} с пользователем {}: {}", id, otherId, commonFriends);
         return ResponseEntity.ok(commonFriends);
     }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public ResponseEntity<List<User>> getFriendSuggestions(@PathVariable long id,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        log.info("запрос от пользователя с id {} показать рекомендуемых друзей", id);
+        List<User> suggestions = userService.getFriendSuggestions(id, limit);
+        log.info("рекомендуемые друзья для пользователя {}: {}", id, suggestions);
+        return ResponseEntity.ok(suggestions);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public ResponseEntity<List<Film>> getRecommendations(@PathVariable long id,
+                                                         @RequestParam(defaultValue = "10") int count) {
+        log.info("запрос от пользователя с id {} показать рекомендованные фильмы", id);
+        List<Film> recommendations = userService.getRecommendations(id, count);
+        log.info("рекомендованные фильмы для пользователя {}: {}", id, recommendations);
+        return ResponseEntity.ok(recommendations);
+    }
 }
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class QueryBudgetExceededException extends RuntimeException {
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
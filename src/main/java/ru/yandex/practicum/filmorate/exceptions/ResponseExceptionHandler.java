@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.exceptions;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.support.DefaultHandlerExceptionResolver;
 
+import javax.validation.ConstraintViolationException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -41,6 +43,14 @@ public class ResponseExceptionHandler extends DefaultHandlerExceptionResolver {
                 .body(exp.getMessage());
     }
 
+    @ExceptionHandler(value = LikeQueueFullException.class)
+    public ResponseEntity<Map<String, String>> handleLikeQueueFullExpCount(final LikeQueueFullException exp) {
+        log.warn(exp.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "Сервер перегружен", "errorMessage", exp.getMessage()));
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ResponseBody
@@ -52,6 +62,17 @@ public class ResponseExceptionHandler extends DefaultHandlerExceptionResolver {
         return new ValidationErrorResponse(violations);
     }
 
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public ValidationErrorResponse handleConstraintViolationExpCount(ConstraintViolationException exp) {
+        final List<Violation> violations = exp.getConstraintViolations().stream()
+                .map(violation -> new Violation(violation.getPropertyPath().toString(), violation.getMessage()))
+                .collect(Collectors.toList());
+        log.error(violations.get(0).message);
+        return new ValidationErrorResponse(violations);
+    }
+
     @Getter
     @RequiredArgsConstructor
     public static class ValidationErrorResponse {
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+    private final MeterRegistry meterRegistry;
+    private final int warnStatements;
+    private final int failStatements;
+
+    public MetricsConfig(MeterRegistry meterRegistry,
+                         @Value("${filmorate.sql.budget.warn-statements:0}") int warnStatements,
+                         @Value("${filmorate.sql.budget.fail-statements:0}") int failStatements) {
+        this.meterRegistry = meterRegistry;
+        this.warnStatements = warnStatements;
+        this.failStatements = failStatements;
+    }
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new SqlStatementsInterceptor(meterRegistry, warnStatements, failStatements));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import ru.yandex.practicum.filmorate.exceptions.QueryBudgetExceededException;
+
+/**
+ * Счетчик SQL-запросов текущего потока. Считает только внутри открытых {@link Scope}, вне их (старт приложения,
+ * фоновые задачи) ничего не делает. Области могут быть вложенными: тест может посчитать запросы вокруг
+ * MockMvc-вызова, внутри которого свою область открывает {@link SqlStatementsInterceptor}.
+ */
+public final class SqlStatementCounter {
+    private static final ThreadLocal<Counter> COUNTER = new ThreadLocal<>();
+
+    private SqlStatementCounter() {
+    }
+
+    public static Scope open() {
+        return open(0);
+    }
+
+    /**
+     * @param failAfter сколько запросов разрешено внутри области; следующий запрос завершится
+     *                  {@link QueryBudgetExceededException}. 0 - без ограничения.
+     */
+    public static Scope open(int failAfter) {
+        Counter counter = COUNTER.get();
+        if (counter == null) {
+            counter = new Counter();
+            COUNTER.set(counter);
+        }
+        return new Scope(counter, failAfter);
+    }
+
+    static void increment() {
+        Counter counter = COUNTER.get();
+        if (counter == null) {
+            return;
+        }
+        counter.total++;
+        if (counter.total > counter.limit) {
+            // ошибка бросается один раз, дальше область просто считает запросы
+            Scope exceeded = counter.limitScope;
+            counter.limit = exceeded.previousLimit;
+            counter.limitScope = exceeded.previousLimitScope;
+            throw new QueryBudgetExceededException("превышен бюджет SQL-запросов: разрешено " + exceeded.failAfter);
+        }
+    }
+
+    private static final class Counter {
+        private int total;
+        private int depth;
+        private int limit = Integer.MAX_VALUE;
+        private Scope limitScope;
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Counter counter;
+        private final int start;
+        private final int failAfter;
+        private final int previousLimit;
+        private final Scope previousLimitScope;
+        private boolean closed;
+        private int count;
+
+        private Scope(Counter counter, int failAfter) {
+            this.counter = counter;
+            this.start = counter.total;
+            this.failAfter = failAfter;
+            this.previousLimit = counter.limit;
+            this.previousLimitScope = counter.limitScope;
+            counter.depth++;
+            if (failAfter > 0 && start + failAfter < counter.limit) {
+                counter.limit = start + failAfter;
+                counter.limitScope = this;
+            }
+        }
+
+        /**
+         * Число запросов с момента открытия области; после закрытия - итоговое.
+         */
+        public int count() {
+            return closed ? count : counter.total - start;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            count = counter.total - start;
+            closed = true;
+            if (counter.limitScope == this) {
+                counter.limit = previousLimit;
+                counter.limitScope = previousLimitScope;
+            }
+            if (--counter.depth == 0) {
+                COUNTER.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Пишет число SQL-запросов на каждый HTTP-запрос в разрезе шаблона uri: рост значения для эндпоинта
+ * означает появившийся N+1. Для асинхронных ответов учитывается только часть, выполненная до начала стриминга.
+ * При превышении warnStatements пишет предупреждение в лог, при превышении failStatements запрос завершается
+ * ошибкой на лишнем SQL-запросе (0 - проверка выключена).
+ */
+@Slf4j
+public class SqlStatementsInterceptor implements AsyncHandlerInterceptor {
+    public static final String SUMMARY_NAME = "filmorate.http.sql.statements";
+    public static final String STATEMENTS_ATTRIBUTE = SqlStatementsInterceptor.class.getName() + ".statements";
+    private static final String SCOPE_ATTRIBUTE = SqlStatementsInterceptor.class.getName() + ".scope";
+
+    private final MeterRegistry meterRegistry;
+    private final int warnStatements;
+    private final int failStatements;
+
+    public SqlStatementsInterceptor(MeterRegistry meterRegistry, int warnStatements, int failStatements) {
+        this.meterRegistry = meterRegistry;
+        this.warnStatements = warnStatements;
+        this.failStatements = failStatements;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            request.setAttribute(SCOPE_ATTRIBUTE, SqlStatementCounter.open(failStatements));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        record(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        record(request);
+    }
+
+    private void record(HttpServletRequest request) {
+        SqlStatementCounter.Scope scope = (SqlStatementCounter.Scope) request.getAttribute(SCOPE_ATTRIBUTE);
+        if (scope == null) {
+            return;
+        }
+        request.removeAttribute(SCOPE_ATTRIBUTE);
+        scope.close();
+        int statements = scope.count();
+        request.setAttribute(STATEMENTS_ATTRIBUTE, statements);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        DistributionSummary.builder(SUMMARY_NAME)
+                .description("число SQL-запросов на один HTTP-запрос")
+                .baseUnit("statements")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(statements);
+        if (warnStatements > 0 && statements > warnStatements) {
+            log.warn("{} {} выполнил {} SQL-запросов при бюджете {}", request.getMethod(), uri, statements,
+                    warnStatements);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Отдает соединения, которые сообщают {@link SqlStatementCounter} о каждом созданном statement.
+ * JdbcTemplate выполняет каждый statement один раз, поэтому созданные statement'ы равны выполненным запросам,
+ * а пакет из batchUpdate считается одним запросом.
+ */
+class StatementCountingDataSource extends DelegatingDataSource {
+    private static final Set<String> STATEMENT_METHODS = Set.of("createStatement", "prepareStatement", "prepareCall");
+
+    StatementCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return countingConnection(super.getConnection(username, password));
+    }
+
+    private Connection countingConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (STATEMENT_METHODS.contains(method.getName())) {
+                        SqlStatementCounter.increment();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException exp) {
+                        throw exp.getTargetException();
+                    }
+                });
+    }
+}
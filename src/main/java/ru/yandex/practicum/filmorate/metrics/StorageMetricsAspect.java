@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Таймер на каждый публичный метод хранилищ из storage.dao. Аспект стоит снаружи кэша и транзакций,
+ * поэтому попадания в кэш тоже учитываются.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StorageMetricsAspect {
+    public static final String TIMER_NAME = "filmorate.storage.calls";
+
+    private final MeterRegistry meterRegistry;
+
+    public StorageMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("within(ru.yandex.practicum.filmorate.storage.dao..*) && execution(public * *(..))")
+    public Object timeStorageCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable exp) {
+            exception = exp.getClass().getSimpleName();
+            throw exp;
+        } finally {
+            sample.stop(Timer.builder(TIMER_NAME)
+                    .description("время вызова методов хранилищ")
+                    .tag("class", joinPoint.getTarget().getClass().getSimpleName())
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("outcome", "none".equals(exception) ? "success" : "error")
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
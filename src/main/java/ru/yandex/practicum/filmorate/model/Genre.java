@@ -4,7 +4,6 @@ import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.ToString;
 
 @Getter
@@ -15,6 +14,6 @@ import lombok.ToString;
 public class Genre {
     private final Integer id;
 
-    @Setter
+    // справочники раздают одни и те же экземпляры всем фильмам, поэтому изменять их нельзя
     private String name;
 }
@@ -4,7 +4,6 @@ import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.ToString;
 
 @Getter
@@ -15,6 +14,5 @@ import lombok.ToString;
 public class Rating {
     private final Integer id;
 
-    @Setter
     private String name;
 }
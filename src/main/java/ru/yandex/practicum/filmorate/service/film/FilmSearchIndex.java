@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Инвертированный индекс по названиям и описаниям фильмов. Текст разбивается на слова из букв и цифр
+ * (кириллица тоже), приводится к нижнему регистру, ё заменяется на е. Каждое слово запроса должно найтись
+ * хотя бы в одном из выбранных полей: целиком или, если в нем от двух символов, как начало слова.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int EXACT_MATCH_WEIGHT = 2;
+    private static final int PREFIX_MATCH_WEIGHT = 1;
+
+    public enum Field {
+        TITLE(3),
+        DESCRIPTION(1);
+
+        private final int boost;
+
+        Field(int boost) {
+            this.boost = boost;
+        }
+    }
+
+    private final FilmStorage filmStorage;
+    private final PopularityLeaderboard leaderboard;
+    // слово -> (id фильма -> сколько раз слово встречается в поле)
+    private final Map<Field, ConcurrentSkipListMap<String, Map<Long, Integer>>> postings = new EnumMap<>(Field.class);
+    private final Map<Long, Map<Field, Map<String, Integer>>> documents = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilmSearchIndex(FilmStorage filmStorage, PopularityLeaderboard leaderboard) {
+        this.filmStorage = filmStorage;
+        this.leaderboard = leaderboard;
+        for (Field field : Field.values()) {
+            postings.put(field, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        clear();
+        filmStorage.streamAllFilms(this::put);
+        log.info("поисковый индекс фильмов построен. Кол-во фильмов: {}", documents.size());
+    }
+
+    public synchronized void put(Film film) {
+        remove(film.getId());
+        Map<Field, Map<String, Integer>> document = new EnumMap<>(Field.class);
+        document.put(Field.TITLE, termFrequencies(film.getName()));
+        document.put(Field.DESCRIPTION, termFrequencies(film.getDescription()));
+        document.forEach((field, terms) -> terms.forEach((term, frequency) -> postings.get(field)
+                .computeIfAbsent(term, key -> new ConcurrentHashMap<>()).put(film.getId(), frequency)));
+        documents.put(film.getId(), document);
+    }
+
+    public synchronized void remove(long filmId) {
+        Map<Field, Map<String, Integer>> document = documents.remove(filmId);
+        if (document == null) {
+            return;
+        }
+        document.forEach((field, terms) -> terms.keySet().forEach(term -> postings.get(field)
+                .computeIfPresent(term, (key, films) -> {
+                    films.remove(filmId);
+                    return films.isEmpty() ? null : films;
+                })));
+    }
+
+    public synchronized void clear() {
+        documents.clear();
+        postings.values().forEach(Map::clear);
+    }
+
+    /**
+     * Id найденных фильмов по убыванию релевантности, при равенстве - по числу лайков, затем по id.
+     * Релевантность - сумма по словам запроса: вес поля * вес совпадения (целиком или по началу) * частота.
+     */
+    public List<Long> search(String query, Set<Field> fields, int count) {
+        List<String> tokens = new ArrayList<>(termFrequencies(query).keySet());
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, long[]> scores = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            Map<Long, Long> tokenScores = new HashMap<>();
+            for (Field field : fields) {
+                collect(tokenScores, postings.get(field), token, field.boost);
+            }
+            int matchedTokens = i;
+            tokenScores.forEach((filmId, score) -> {
+                long[] total = matchedTokens == 0 ? scores.computeIfAbsent(filmId, id -> new long[2])
+                        : scores.get(filmId);
+                // фильм уже отсеян, если не нашлось одного из предыдущих слов
+                if (total != null && total[1] == matchedTokens) {
+                    total[0] += score;
+                    total[1]++;
+                }
+            });
+        }
+        Comparator<Map.Entry<Long, long[]>> order = Comparator
+                .<Map.Entry<Long, long[]>>comparingLong(entry -> -entry.getValue()[0])
+                .thenComparingInt(entry -> -leaderboard.getLikes(entry.getKey()))
+                .thenComparingLong(Map.Entry::getKey);
+        return scores.entrySet().stream()
+                .filter(entry -> entry.getValue()[1] == tokens.size())
+                .sorted(order)
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public static Set<Field> allFields() {
+        return EnumSet.allOf(Field.class);
+    }
+
+    private static void collect(Map<Long, Long> tokenScores, ConcurrentSkipListMap<String, Map<Long, Integer>> index,
+                                String token, int boost) {
+        NavigableMap<String, Map<Long, Integer>> terms = token.length() >= MIN_PREFIX_LENGTH
+                ? index.subMap(token, true, token + Character.MAX_VALUE, false)
+                : index.subMap(token, true, token, true);
+        terms.forEach((term, films) -> {
+            int weight = boost * (term.equals(token) ? EXACT_MATCH_WEIGHT : PREFIX_MATCH_WEIGHT);
+            films.forEach((filmId, frequency) -> tokenScores.merge(filmId, (long) weight * frequency, Long::sum));
+        });
+    }
+
+    private static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean partOfWord = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (partOfWord && start < 0) {
+                start = i;
+            } else if (!partOfWord && start >= 0) {
+                terms.merge(normalized.substring(start, i), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
@@ -4,24 +4,39 @@ import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmService {
 
     Film createFilm(Film film);
 
+    List<Long> createFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Collection<Film> getAllFilms();
 
+    List<Film> getFilms(long afterId, int limit);
+
+    void exportFilms(Consumer<Film> consumer);
+
     void deleteFilmById(long id);
 
     void deleteAllFilms();
 
     Film getFilmById(long id);
 
+    long getFilmVersion(long id);
+
     void addLikeToFilm(long filmId, long userId);
 
     void deleteLike(long filmId, long userId);
 
     List<Film> getTopFilms(int count);
+
+    List<Film> getTopFilms(int count, Integer genreId, Integer year);
+
+    long getTopFilmsVersion();
+
+    List<Film> searchFilms(String query, String by, int count);
 }
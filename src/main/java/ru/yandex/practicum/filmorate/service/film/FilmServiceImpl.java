@@ -2,40 +2,61 @@ package ru.yandex.practicum.filmorate.service.film;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.AfterCommit;
+import ru.yandex.practicum.filmorate.storage.dao.EntityVersions;
 import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.RatingStorage;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
-import ru.yandex.practicum.filmorate.storage.dao.FilmStorageImpl;
-import ru.yandex.practicum.filmorate.storage.dao.UserStorageImpl;
 
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 @Service
 public class FilmServiceImpl implements FilmService {
     private static final LocalDate LOWER_DATE_LIMIT = LocalDate.of(1895, 12, 28);
+    private static final int MAX_SEARCH_RESULTS = 100;
     private final FilmStorage filmStorage;
     private final GenreStorage genreStorage;
+    private final RatingStorage ratingStorage;
     private final LikeStorage likeStorage;
     private final UserStorage userStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final FilmSearchIndex searchIndex;
+    private final EntityVersions versions;
+    private final LikeWriteBehind likeWriteBehind;
+    private final OffHeapFilmCatalog offHeapCatalog;
 
     @Autowired
-    public FilmServiceImpl(FilmStorageImpl filmStorage, UserStorageImpl userStorage, GenreStorage genreStorage,
-                           LikeStorage likeStorage) {
+    public FilmServiceImpl(FilmStorage filmStorage, UserStorage userStorage, GenreStorage genreStorage,
+                           RatingStorage ratingStorage, LikeStorage likeStorage, PopularityLeaderboard leaderboard,
+                           FilmSearchIndex searchIndex, EntityVersions versions, LikeWriteBehind likeWriteBehind,
+                           OffHeapFilmCatalog offHeapCatalog) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.genreStorage = genreStorage;
+        this.ratingStorage = ratingStorage;
         this.likeStorage = likeStorage;
+        this.leaderboard = leaderboard;
+        this.searchIndex = searchIndex;
+        this.versions = versions;
+        this.likeWriteBehind = likeWriteBehind;
+        this.offHeapCatalog = offHeapCatalog;
     }
 
     @Override
@@ -48,7 +69,31 @@ public class FilmServiceImpl implements FilmService {
         long newFilmId = filmStorage.createFilm(film);
         genreStorage.createGenres(newFilmId, film);
         likeStorage.createLikes(newFilmId, film);
-        return filmStorage.findFilmById(newFilmId);
+        Film newFilm = filmStorage.findFilmById(newFilmId);
+        leaderboard.put(newFilm);
+        searchIndex.put(newFilm);
+        return newFilm;
+    }
+
+    @Override
+    @Transactional
+    public List<Long> createFilms(List<Film> films) {
+        films.forEach(this::checkReleaseDate);
+        // неизвестный жанр или рейтинг отклоняется до первой вставки, а не падает на внешнем ключе посреди пачки
+        films.forEach(this::checkReferences);
+        // лайки при создании не принимаются, как и в createFilm
+        films.forEach(film -> film.setLikes(new HashSet<>()));
+        List<Long> ids = filmStorage.createFilms(films);
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(ids.get(i));
+        }
+        genreStorage.createGenres(films);
+        // после отката импорта в рейтинге и поиске не должно остаться его фильмов
+        AfterCommit.run(() -> films.forEach(film -> {
+            leaderboard.put(film);
+            searchIndex.put(film);
+        }));
+        return ids;
     }
 
     @Override
@@ -57,10 +102,9 @@ public class FilmServiceImpl implements FilmService {
         Set<Long> likes = filmStorage.findFilmById(film.getId()).getLikes();
         film.setLikes(likes);
         filmStorage.updateFilm(film);
-        genreStorage.deleteGenres(film.getId());
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            genreStorage.createGenres(film.getId(), film);
-        }
+        genreStorage.updateGenres(film.getId(), film.getGenres());
+        leaderboard.updateFacets(film);
+        searchIndex.put(film);
         return filmStorage.findFilmById(film.getId());
     }
 
@@ -69,36 +113,127 @@ public class FilmServiceImpl implements FilmService {
         return filmStorage.findAllFilms();
     }
 
+    @Override
+    public List<Film> getFilms(long afterId, int limit) {
+        return filmStorage.findFilms(afterId, limit);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> consumer) {
+        filmStorage.streamAllFilms(consumer);
+    }
+
     @Override
     public void deleteFilmById(long id) {
         filmStorage.deleteFilmById(id);
+        leaderboard.remove(id);
+        searchIndex.remove(id);
+        offHeapCatalog.remove(id);
     }
 
     @Override
     public void deleteAllFilms() {
         filmStorage.deleteAllFilms();
+        leaderboard.clear();
+        searchIndex.clear();
+        offHeapCatalog.clear();
     }
 
     @Override
     public Film getFilmById(long id) {
-        return filmStorage.findFilmById(id);
+        return offHeapCatalog.isEnabled() ? offHeapCatalog.getFilm(id) : filmStorage.findFilmById(id);
+    }
+
+    @Override
+    public long getFilmVersion(long id) {
+        return versions.getFilmVersion(id);
     }
 
     @Override
     public void addLikeToFilm(long filmId, long userId) {
         User user = userStorage.findUserById(userId);
-        likeStorage.addLike(filmId, user.getId());
+        if (likeWriteBehind.isEnabled()) {
+            // фильм проверяется по рейтингу в памяти: отложенный лайк не должен стоить запроса к базе
+            if (!leaderboard.contains(filmId)) {
+                throw new IncorrectIdException("фильма с id " + filmId + " не существует!");
+            }
+            likeWriteBehind.like(filmId, user.getId());
+            return;
+        }
+        if (likeStorage.addLike(filmId, user.getId())) {
+            leaderboard.changeLikes(filmId, 1);
+        }
     }
 
     @Override
     public void deleteLike(long filmId, long userId) {
         User user = userStorage.findUserById(userId);
-        likeStorage.deleteLike(filmId, user.getId());
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.unlike(filmId, user.getId());
+            return;
+        }
+        if (likeStorage.deleteLike(filmId, user.getId())) {
+            leaderboard.changeLikes(filmId, -1);
+        }
     }
 
     @Override
     public List<Film> getTopFilms(int count) {
-        return filmStorage.getTopFilms(count);
+        return findFilmsByIds(leaderboard.getTopFilmIds(count));
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count, Integer genreId, Integer year) {
+        if (genreId != null) {
+            genreStorage.findGenreById(genreId);
+        }
+        return findFilmsByIds(leaderboard.getTopFilmIds(count, genreId, year));
+    }
+
+    // обе версии только растут, поэтому сумма меняется при любом изменении фильмов или рейтинга
+    @Override
+    public long getTopFilmsVersion() {
+        return versions.getFilmsVersion() + leaderboard.getVersion();
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, String by, int count) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("поисковый запрос не может быть пустым");
+        }
+        if (count <= 0 || count > MAX_SEARCH_RESULTS) {
+            throw new ValidationException("число результатов поиска должно быть от 1 до " + MAX_SEARCH_RESULTS +
+                    ": " + count);
+        }
+        return findFilmsByIds(searchIndex.search(query, parseSearchFields(by), count));
+    }
+
+    private List<Film> findFilmsByIds(List<Long> ids) {
+        return offHeapCatalog.isEnabled() ? offHeapCatalog.getFilms(ids) : filmStorage.findFilmsByIds(ids);
+    }
+
+    private Set<FilmSearchIndex.Field> parseSearchFields(String by) {
+        if (by == null || by.isBlank()) {
+            return FilmSearchIndex.allFields();
+        }
+        Set<FilmSearchIndex.Field> fields = EnumSet.noneOf(FilmSearchIndex.Field.class);
+        for (String name : by.split(",")) {
+            try {
+                fields.add(FilmSearchIndex.Field.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException exp) {
+                throw new ValidationException("искать можно только по полям title и description: " + by);
+            }
+        }
+        return fields;
+    }
+
+    private void checkReferences(Film film) {
+        if (film.getMpa() != null) {
+            ratingStorage.findRatingById(film.getMpa().getId());
+        }
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> genreStorage.findGenreById(genre.getId()));
+        }
     }
 
     private void checkReleaseDate(Film film) {
@@ -0,0 +1,284 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.LikeQueueFullException;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись лайков, включается filmorate.likes.write-behind.enabled. Лайки и отмены копятся в памяти,
+ * для каждой пары фильм-пользователь хранится только последнее действие, и при накоплении flush-size пар или
+ * раз в flush-interval-ms они пишутся в базу пакетами. Карточки и рейтинг фильмов видят лайк после записи.
+ * Если в очереди уже capacity пар, новая пара ждет места не дольше offer-timeout-ms. После неудачной записи
+ * следующая попытка откладывается, каждый раз вдвое дольше. При остановке приложения очередь дописывается до
+ * конца; если база не отвечает дольше shutdown-timeout-ms, незаписанные пары выводятся в лог и остановка
+ * завершается ошибкой.
+ */
+@Slf4j
+@Component
+public class LikeWriteBehind {
+    public static final String QUEUE_GAUGE_NAME = "filmorate.likes.write-behind.queue";
+    public static final String FLUSH_TIMER_NAME = "filmorate.likes.write-behind.flush";
+    public static final String COALESCED_COUNTER_NAME = "filmorate.likes.write-behind.coalesced";
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private final LikeStorage likeStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final boolean enabled;
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final long shutdownTimeoutMillis;
+    private final Timer flushTimer;
+    private final Counter coalescedCounter;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    // пакеты пишутся по одному, чтобы более позднее действие с парой не обогнало раннее
+    private final Object flushMonitor = new Object();
+    // true - лайк, false - отмена лайка
+    private Map<LikeKey, Boolean> pending = new LinkedHashMap<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Autowired
+    public LikeWriteBehind(LikeStorage likeStorage, PopularityLeaderboard leaderboard, MeterRegistry meterRegistry,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.capacity:100000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-size:1000}") int flushSize,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+                           @Value("${filmorate.likes.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis,
+                           @Value("${filmorate.likes.write-behind.shutdown-timeout-ms:10000}")
+                           long shutdownTimeoutMillis) {
+        this.likeStorage = likeStorage;
+        this.leaderboard = leaderboard;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.flushTimer = Timer.builder(FLUSH_TIMER_NAME)
+                .description("время записи пакета отложенных лайков")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder(COALESCED_COUNTER_NAME)
+                .description("лайки и отмены, заменившие еще не записанное действие с той же парой")
+                .register(meterRegistry);
+        Gauge.builder(QUEUE_GAUGE_NAME, this, LikeWriteBehind::getQueueSize)
+                .description("число пар фильм-пользователь, ожидающих записи")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "like-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("отложенная запись лайков включена. Емкость очереди: {}, размер пакета: {}", capacity, flushSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+        flusher = null;
+        // то, что успело прийти во время остановки, и пакеты, которые не удалось записать раньше
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        int failures = 0;
+        while (!flush()) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                failPending();
+            }
+            Thread.sleep(Math.min(retryDelayMillis(++failures), left));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void like(long filmId, long userId) {
+        submit(new LikeKey(filmId, userId), true);
+    }
+
+    public void unlike(long filmId, long userId) {
+        submit(new LikeKey(filmId, userId), false);
+    }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Пишет в базу все накопленное к этому моменту. Если запись не удалась, пары возвращаются в очередь,
+     * не затирая пришедших за это время более поздних действий, и возвращается false.
+     */
+    public boolean flush() {
+        synchronized (flushMonitor) {
+            Map<LikeKey, Boolean> batch;
+            lock.lock();
+            try {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (batch.isEmpty()) {
+                return true;
+            }
+            Timer.Sample sample = Timer.start();
+            try {
+                write(batch);
+                return true;
+            } catch (RuntimeException exp) {
+                log.error("не удалось записать пакет лайков, пар: {}. {}", batch.size(), exp.getMessage());
+                requeue(batch);
+                return false;
+            } finally {
+                sample.stop(flushTimer);
+            }
+        }
+    }
+
+    private void submit(LikeKey key, boolean liked) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+            // новая пара не помещается, уже ожидающая - просто меняет действие
+            while (pending.size() >= capacity && !pending.containsKey(key)) {
+                if (nanos <= 0) {
+                    throw new LikeQueueFullException("очередь лайков переполнена, повторите запрос позже");
+                }
+                flushRequested.signal();
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (pending.put(key, liked) != null) {
+                coalescedCounter.increment();
+            }
+            if (pending.size() >= flushSize) {
+                flushRequested.signal();
+            }
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new LikeQueueFullException("ожидание места в очереди лайков прервано");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // остаток очереди после остановки дописывает stop()
+    private void runFlusher() {
+        int failures = 0;
+        while (running) {
+            awaitFlush(failures);
+            if (running) {
+                failures = flush() ? 0 : failures + 1;
+            }
+        }
+    }
+
+    // после неудачной записи пауза выдерживается целиком, даже если в очереди уже набрался пакет
+    private void awaitFlush(int failures) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(retryDelayMillis(failures));
+            while (running && (failures > 0 || pending.size() < flushSize) && nanos > 0) {
+                nanos = flushRequested.awaitNanos(nanos);
+            }
+        } catch (InterruptedException exp) {
+            // поток записи никто не прерывает, на всякий случай просто пишем очередь раньше срока
+            log.warn("ожидание записи лайков прервано");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long retryDelayMillis(int failures) {
+        return Math.min(flushIntervalMillis << Math.min(failures, 20), Math.max(flushIntervalMillis,
+                MAX_RETRY_DELAY_MILLIS));
+    }
+
+    private void failPending() {
+        Map<LikeKey, Boolean> lost;
+        lock.lock();
+        try {
+            lost = pending;
+            pending = new LinkedHashMap<>();
+        } finally {
+            lock.unlock();
+        }
+        log.error("при остановке не записаны отложенные лайки (true - лайк, false - отмена): {}", lost);
+        throw new IllegalStateException("не удалось записать отложенные лайки при остановке, пар: " + lost.size());
+    }
+
+    private void write(Map<LikeKey, Boolean> batch) {
+        List<long[]> likes = new ArrayList<>();
+        List<long[]> unlikes = new ArrayList<>();
+        batch.forEach((key, liked) -> (liked ? likes : unlikes).add(new long[]{key.getFilmId(), key.getUserId()}));
+        Map<Long, Integer> deltas = likeStorage.applyLikes(likes, unlikes);
+        deltas.forEach(leaderboard::changeLikes);
+        log.debug("записан пакет лайков: {} лайков, {} отмен", likes.size(), unlikes.size());
+    }
+
+    private void requeue(Map<LikeKey, Boolean> batch) {
+        lock.lock();
+        try {
+            Map<LikeKey, Boolean> merged = new LinkedHashMap<>(batch);
+            merged.putAll(pending);
+            pending = merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @ToString
+    @RequiredArgsConstructor
+    private static final class LikeKey {
+        private final long filmId;
+        private final long userId;
+    }
+}
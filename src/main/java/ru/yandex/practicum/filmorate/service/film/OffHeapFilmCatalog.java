@@ -0,0 +1,506 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.storage.dao.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Копия каталога фильмов вне кучи для развертываний, где фильмы в основном читаются, включается
+ * filmorate.films.off-heap.enabled. Поля фильма лежат по колонкам в direct-буферах, номер строки - id фильма.
+ * Рейтинг хранится своим id, жанры - битовой маской кодов из словаря, а название, описание и лайки - в отдельных
+ * областях байтов, на которые ссылаются колонки смещений. Строка помнит версию фильма из {@link EntityVersions},
+ * с которой записана: если фильм с тех пор менялся, он перечитывается из хранилища, так что копия не отстает и
+ * не требует отдельных уведомлений об изменениях. Читатели не блокируются: значения колонок проверяются
+ * оптимистичной меткой StampedLock.
+ */
+@Slf4j
+@Component
+public class OffHeapFilmCatalog {
+    public static final String REQUESTS_COUNTER_NAME = "filmorate.films.off-heap.requests";
+    public static final String MEMORY_GAUGE_NAME = "filmorate.films.off-heap.memory";
+    private static final int INITIAL_ROWS = 1024;
+    // колонка из long не может быть больше одного буфера
+    private static final int MAX_ROWS = Integer.MAX_VALUE / Long.BYTES;
+    private static final int ROW_SIZE = 2 * Long.BYTES + 8 * Integer.BYTES;
+    private static final int INITIAL_AREA_SIZE = 64 << 10;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    // маска -1 невозможна, пока кодов меньше 64
+    private static final int MAX_GENRE_CODES = Long.SIZE - 1;
+    private static final long NOT_ENCODABLE = -1;
+
+    private final FilmStorage filmStorage;
+    private final EntityVersions versions;
+    private final boolean enabled;
+    private final Counter hits;
+    private final Counter misses;
+    private final StampedLock lock = new StampedLock();
+    // код жанра - позиция в списке; названия рейтингов и жанров не меняются
+    private final List<Genre> genreCodes = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Integer> genreCodesById = new ConcurrentHashMap<>();
+    private final Map<Integer, String> ratingNames = new ConcurrentHashMap<>();
+    private volatile Table table;
+
+    @Autowired
+    public OffHeapFilmCatalog(FilmStorage filmStorage, EntityVersions versions, MeterRegistry meterRegistry,
+                              @Value("${filmorate.films.off-heap.enabled:false}") boolean enabled) {
+        this.filmStorage = filmStorage;
+        this.versions = versions;
+        this.enabled = enabled;
+        this.hits = Counter.builder(REQUESTS_COUNTER_NAME)
+                .description("чтения фильмов из копии вне кучи")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder(REQUESTS_COUNTER_NAME)
+                .description("чтения фильмов из копии вне кучи")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder(MEMORY_GAUGE_NAME, this, OffHeapFilmCatalog::getMemoryUsed)
+                .description("байт памяти вне кучи под копию каталога фильмов")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        // любое изменение после этой точки получит версию больше, и строка будет перечитана
+        long version = versions.getFilmsVersion();
+        clear();
+        long[] count = new long[1];
+        filmStorage.streamAllFilms(film -> {
+            put(film, version);
+            count[0]++;
+        });
+        log.info("копия каталога фильмов вне кучи построена. Кол-во фильмов: {}, байт: {}", count[0],
+                getMemoryUsed());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Film getFilm(long id) {
+        List<Film> films = getFilms(List.of(id));
+        if (films.isEmpty()) {
+            throw new IncorrectIdException("фильма с id " + id + " не существует!");
+        }
+        return films.get(0);
+    }
+
+    // порядок id сохраняется, несуществующие фильмы пропускаются, как в FilmStorage.findFilmsByIds
+    public List<Film> getFilms(Collection<Long> ids) {
+        Map<Long, Film> found = new HashMap<>();
+        Map<Long, Long> missing = new HashMap<>();
+        for (long id : ids) {
+            long version = versions.getFilmVersion(id);
+            Film film = read(id, version);
+            if (film != null) {
+                found.put(id, film);
+            } else {
+                missing.put(id, version);
+            }
+        }
+        hits.increment(found.size());
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            Set<Long> loaded = new HashSet<>();
+            for (Film film : filmStorage.findFilmsByIds(missing.keySet())) {
+                put(film, missing.get(film.getId()));
+                found.put(film.getId(), film);
+                loaded.add(film.getId());
+            }
+            missing.keySet().stream().filter(id -> !loaded.contains(id)).forEach(this::remove);
+        }
+        List<Film> films = new ArrayList<>(found.size());
+        for (long id : ids) {
+            Film film = found.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            if (current != null && id > 0 && id < current.rows) {
+                current.release((int) id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long getMemoryUsed() {
+        Table current = table;
+        return current == null ? 0 : current.capacity();
+    }
+
+    private Film read(long id, long version) {
+        if (id <= 0 || id >= MAX_ROWS) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Film film = decode(table, (int) id, version);
+                if (lock.validate(stamp)) {
+                    return film;
+                }
+            } catch (RuntimeException e) {
+                // при параллельной записи смещения могли прочитаться рассогласованными
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return decode(table, (int) id, version);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Film decode(Table current, int row, long version) {
+        if (current == null || row >= current.rows) {
+            return null;
+        }
+        long rowVersion = current.versions.getLong(row * Long.BYTES);
+        if (rowVersion == 0 || rowVersion < version) {
+            return null;
+        }
+        int textOffset = current.textOffsets.getInt(row * Integer.BYTES);
+        int nameLength = current.nameLengths.getInt(row * Integer.BYTES);
+        int descriptionLength = current.descriptionLengths.getInt(row * Integer.BYTES);
+        String name = current.text.getString(textOffset, nameLength);
+        String description = current.text.getString(textOffset + Math.max(nameLength, 0), descriptionLength);
+        int duration = current.durations.getInt(row * Integer.BYTES);
+        int releaseDay = current.releaseDays.getInt(row * Integer.BYTES);
+        int ratingId = current.ratings.getInt(row * Integer.BYTES);
+        long genreMask = current.genres.getLong(row * Long.BYTES);
+        Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId));
+        for (long mask = genreMask; mask != 0; mask &= mask - 1) {
+            Genre genre = genreCodes.get(Long.numberOfTrailingZeros(mask));
+            genres.add(new Genre(genre.getId(), genre.getName()));
+        }
+        int likesOffset = current.likesOffsets.getInt(row * Integer.BYTES);
+        int likesCount = current.likesCounts.getInt(row * Integer.BYTES);
+        Set<Long> likes = new HashSet<>();
+        for (int i = 0; i < likesCount; i++) {
+            likes.add(current.likes.bytes.getLong(likesOffset + i * Long.BYTES));
+        }
+        Film film = Film.builder().name(name).description(description)
+                .releaseDate(releaseDay == NULL_INT ? null : LocalDate.ofEpochDay(releaseDay))
+                .duration(duration == NULL_INT ? null : duration)
+                .mpa(ratingId == NULL_INT ? null : new Rating(ratingId, ratingNames.get(ratingId)))
+                .genres(genres).likes(likes).build();
+        film.setId(row);
+        return film;
+    }
+
+    private void put(Film film, long version) {
+        long id = film.getId();
+        long genreMask = encodeGenres(film.getGenres());
+        if (id <= 0 || id >= MAX_ROWS || genreMask == NOT_ENCODABLE) {
+            remove(id);
+            return;
+        }
+        if (film.getMpa() != null) {
+            ratingNames.putIfAbsent(film.getMpa().getId(), film.getMpa().getName());
+        }
+        byte[] name = bytes(film.getName());
+        byte[] description = bytes(film.getDescription());
+        long[] likes = film.getLikes() == null ? new long[0]
+                : film.getLikes().stream().mapToLong(Long::longValue).sorted().toArray();
+        long stamp = lock.writeLock();
+        try {
+            int row = (int) id;
+            Table current = ensureRows(row);
+            current.release(row);
+            int textOffset = current.text.append(name, description);
+            int likesOffset = current.likes.append(likes);
+            if (textOffset < 0 || likesOffset < 0) {
+                current = compact(current);
+                textOffset = current.text.append(name, description);
+                likesOffset = current.likes.append(likes);
+            }
+            if (textOffset < 0 || likesOffset < 0) {
+                log.warn("фильм {} не помещается в копию каталога вне кучи", id);
+                return;
+            }
+            int at = row * Integer.BYTES;
+            current.textOffsets.putInt(at, textOffset);
+            current.nameLengths.putInt(at, name == null ? -1 : name.length);
+            current.descriptionLengths.putInt(at, description == null ? -1 : description.length);
+            current.likesOffsets.putInt(at, likesOffset);
+            current.likesCounts.putInt(at, likes.length);
+            current.durations.putInt(at, film.getDuration() == null ? NULL_INT : film.getDuration());
+            current.releaseDays.putInt(at, film.getReleaseDate() == null ? NULL_INT
+                    : (int) film.getReleaseDate().toEpochDay());
+            current.ratings.putInt(at, film.getMpa() == null ? NULL_INT : film.getMpa().getId());
+            current.genres.putLong(row * Long.BYTES, genreMask);
+            current.versions.putLong(row * Long.BYTES, version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // под блокировкой записи
+    private Table ensureRows(int row) {
+        Table current = table;
+        if (current == null) {
+            current = new Table(Math.max(INITIAL_ROWS, row + 1), new Area(INITIAL_AREA_SIZE),
+                    new Area(INITIAL_AREA_SIZE));
+            table = current;
+        } else if (row >= current.rows) {
+            current = current.resize((int) Math.min(MAX_ROWS, Math.max(row + 1L, current.rows * 2L)));
+            table = current;
+        }
+        return current;
+    }
+
+    // области переписываются заново: освобожденные байты отбрасываются, место под новые данные удваивается
+    private Table compact(Table current) {
+        Area text = new Area((int) Math.min(Integer.MAX_VALUE - 8, Math.max(INITIAL_AREA_SIZE,
+                2L * (current.text.used - current.text.released) + INITIAL_AREA_SIZE)));
+        Area likes = new Area((int) Math.min(Integer.MAX_VALUE - 8, Math.max(INITIAL_AREA_SIZE,
+                2L * (current.likes.used - current.likes.released) + INITIAL_AREA_SIZE)));
+        for (int row = 1; row < current.rows; row++) {
+            int at = row * Integer.BYTES;
+            if (current.versions.getLong(row * Long.BYTES) == 0) {
+                continue;
+            }
+            int textLength = current.textLength(row);
+            current.textOffsets.putInt(at, text.copy(current.text, current.textOffsets.getInt(at), textLength));
+            current.likesOffsets.putInt(at, likes.copy(current.likes, current.likesOffsets.getInt(at),
+                    current.likesCounts.getInt(at) * Long.BYTES));
+        }
+        Table compacted = current.withAreas(text, likes);
+        table = compacted;
+        return compacted;
+    }
+
+    private long encodeGenres(Set<Genre> genres) {
+        long mask = 0;
+        if (genres == null) {
+            return mask;
+        }
+        for (Genre genre : genres) {
+            Integer code = genreCodesById.get(genre.getId());
+            if (code == null) {
+                synchronized (genreCodes) {
+                    code = genreCodesById.get(genre.getId());
+                    if (code == null) {
+                        if (genreCodes.size() >= MAX_GENRE_CODES) {
+                            return NOT_ENCODABLE;
+                        }
+                        genreCodes.add(new Genre(genre.getId(), genre.getName()));
+                        code = genreCodes.size() - 1;
+                        genreCodesById.put(genre.getId(), code);
+                    }
+                }
+            }
+            mask |= 1L << code;
+        }
+        return mask;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // колонки фиксированной ширины; строка 0 не используется, id начинаются с 1
+    private static final class Table {
+        private final int rows;
+        private final ByteBuffer versions;
+        private final ByteBuffer durations;
+        private final ByteBuffer releaseDays;
+        private final ByteBuffer ratings;
+        private final ByteBuffer genres;
+        private final ByteBuffer textOffsets;
+        private final ByteBuffer nameLengths;
+        private final ByteBuffer descriptionLengths;
+        private final ByteBuffer likesOffsets;
+        private final ByteBuffer likesCounts;
+        private final Area text;
+        private final Area likes;
+
+        private Table(int rows, Area text, Area likes) {
+            this(rows, ByteBuffer.allocateDirect(rows * Long.BYTES), ByteBuffer.allocateDirect(rows * Integer.BYTES),
+                    ByteBuffer.allocateDirect(rows * Integer.BYTES), ByteBuffer.allocateDirect(rows * Integer.BYTES),
+                    ByteBuffer.allocateDirect(rows * Long.BYTES), ByteBuffer.allocateDirect(rows * Integer.BYTES),
+                    ByteBuffer.allocateDirect(rows * Integer.BYTES), ByteBuffer.allocateDirect(rows * Integer.BYTES),
+                    ByteBuffer.allocateDirect(rows * Integer.BYTES), ByteBuffer.allocateDirect(rows * Integer.BYTES),
+                    text, likes);
+        }
+
+        private Table(int rows, ByteBuffer versions, ByteBuffer durations, ByteBuffer releaseDays,
+                      ByteBuffer ratings, ByteBuffer genres, ByteBuffer textOffsets, ByteBuffer nameLengths,
+                      ByteBuffer descriptionLengths, ByteBuffer likesOffsets, ByteBuffer likesCounts, Area text,
+                      Area likes) {
+            this.rows = rows;
+            this.versions = versions;
+            this.durations = durations;
+            this.releaseDays = releaseDays;
+            this.ratings = ratings;
+            this.genres = genres;
+            this.textOffsets = textOffsets;
+            this.nameLengths = nameLengths;
+            this.descriptionLengths = descriptionLengths;
+            this.likesOffsets = likesOffsets;
+            this.likesCounts = likesCounts;
+            this.text = text;
+            this.likes = likes;
+        }
+
+        private Table resize(int newRows) {
+            Table resized = new Table(newRows, text, likes);
+            copy(versions, resized.versions);
+            copy(durations, resized.durations);
+            copy(releaseDays, resized.releaseDays);
+            copy(ratings, resized.ratings);
+            copy(genres, resized.genres);
+            copy(textOffsets, resized.textOffsets);
+            copy(nameLengths, resized.nameLengths);
+            copy(descriptionLengths, resized.descriptionLengths);
+            copy(likesOffsets, resized.likesOffsets);
+            copy(likesCounts, resized.likesCounts);
+            return resized;
+        }
+
+        private Table withAreas(Area newText, Area newLikes) {
+            return new Table(rows, versions, durations, releaseDays, ratings, genres, textOffsets, nameLengths,
+                    descriptionLengths, likesOffsets, likesCounts, newText, newLikes);
+        }
+
+        // строка перестает читаться, ее байты в областях считаются освобожденными
+        private void release(int row) {
+            if (versions.getLong(row * Long.BYTES) == 0) {
+                return;
+            }
+            versions.putLong(row * Long.BYTES, 0);
+            text.released += textLength(row);
+            likes.released += likesCounts.getInt(row * Integer.BYTES) * Long.BYTES;
+        }
+
+        private int textLength(int row) {
+            return Math.max(nameLengths.getInt(row * Integer.BYTES), 0)
+                    + Math.max(descriptionLengths.getInt(row * Integer.BYTES), 0);
+        }
+
+        private long capacity() {
+            return (long) rows * ROW_SIZE + text.bytes.capacity() + likes.bytes.capacity();
+        }
+
+        private static void copy(ByteBuffer from, ByteBuffer to) {
+            ByteBuffer source = from.duplicate();
+            source.clear();
+            ByteBuffer target = to.duplicate();
+            target.clear();
+            target.put(source);
+        }
+    }
+
+    // байты переменной длины; записи только добавляются, место освобожденных возвращается при переписывании
+    private static final class Area {
+        private final ByteBuffer bytes;
+        private int used;
+        private long released;
+
+        private Area(int capacity) {
+            bytes = ByteBuffer.allocateDirect(capacity);
+        }
+
+        // -1, если места не хватает
+        private int append(byte[] first, byte[] second) {
+            int length = (first == null ? 0 : first.length) + (second == null ? 0 : second.length);
+            if (bytes.capacity() - used < length) {
+                return -1;
+            }
+            int offset = used;
+            ByteBuffer target = bytes.duplicate();
+            target.position(offset);
+            if (first != null) {
+                target.put(first);
+            }
+            if (second != null) {
+                target.put(second);
+            }
+            used += length;
+            return offset;
+        }
+
+        private int append(long[] values) {
+            if (bytes.capacity() - used < values.length * Long.BYTES) {
+                return -1;
+            }
+            int offset = used;
+            for (long value : values) {
+                bytes.putLong(used, value);
+                used += Long.BYTES;
+            }
+            return offset;
+        }
+
+        private int copy(Area from, int offset, int length) {
+            ByteBuffer source = from.bytes.duplicate();
+            source.limit(offset + length).position(offset);
+            ByteBuffer target = bytes.duplicate();
+            target.position(used);
+            target.put(source);
+            int copied = used;
+            used += length;
+            return copied;
+        }
+
+        private String getString(int offset, int length) {
+            if (length < 0) {
+                return null;
+            }
+            byte[] value = new byte[length];
+            bytes.duplicate().position(offset).get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
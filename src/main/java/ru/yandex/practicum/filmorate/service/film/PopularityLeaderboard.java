@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рейтинги популярности в памяти: общий, по жанру, по году выхода и по паре жанр + год. Фильм входит во все
+ * подходящие рейтинги сразу, поэтому выборка с фильтром - такой же проход по началу одного отсортированного
+ * набора, как и без фильтра.
+ */
+@Slf4j
+@Component
+public class PopularityLeaderboard {
+    private static final Comparator<Entry> RANKING_ORDER = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingLong(Entry::getFilmId);
+    private static final int[] NO_GENRES = new int[0];
+    // 0 в сегменте означает, что по этому признаку фильмы не фильтруются
+    private static final int ANY = 0;
+
+    private final FilmStorage filmStorage;
+    private final GenreStorage genreStorage;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Segment, ConcurrentSkipListSet<Entry>> rankings = new ConcurrentHashMap<>();
+    // растет после каждого изменения рейтингов
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public PopularityLeaderboard(FilmStorage filmStorage, GenreStorage genreStorage) {
+        this.filmStorage = filmStorage;
+        this.genreStorage = genreStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, Integer> likeCounts = filmStorage.getLikeCounts();
+        Map<Long, Integer> releaseYears = filmStorage.getReleaseYears();
+        Map<Long, Set<Integer>> genreIds = genreStorage.getGenreIdsByFilm();
+        clear();
+        likeCounts.forEach((filmId, likes) -> entries.compute(filmId, (id, old) -> replace(old, new Entry(id, likes,
+                releaseYears.getOrDefault(id, ANY), toArray(genreIds.getOrDefault(id, Set.of()))))));
+        log.info("рейтинг популярности построен. Кол-во фильмов: {}", likeCounts.size());
+    }
+
+    public void put(Film film) {
+        int likes = film.getLikes() == null ? 0 : film.getLikes().size();
+        entries.compute(film.getId(), (id, old) -> replace(old, new Entry(id, likes, releaseYear(film),
+                genreIds(film))));
+    }
+
+    // жанры и год выхода могли измениться, лайки остаются прежними
+    public void updateFacets(Film film) {
+        entries.compute(film.getId(), (id, old) -> replace(old, new Entry(id, old == null ? 0 : old.getLikes(),
+                releaseYear(film), genreIds(film))));
+    }
+
+    // фильм без записи уже удален: лайк, успевший закоммититься перед удалением, не должен вернуть его в рейтинг
+    public void changeLikes(long filmId, int delta) {
+        entries.computeIfPresent(filmId, (id, old) -> replace(old, old.withLikes(Math.max(old.getLikes() + delta, 0))));
+    }
+
+    public void resetLikes() {
+        entries.keySet().forEach(filmId -> entries.computeIfPresent(filmId,
+                (id, old) -> replace(old, old.withLikes(0))));
+    }
+
+    public void remove(long filmId) {
+        entries.computeIfPresent(filmId, (id, old) -> replace(old, null));
+    }
+
+    public void clear() {
+        entries.keySet().forEach(this::remove);
+    }
+
+    public boolean contains(long filmId) {
+        return entries.containsKey(filmId);
+    }
+
+    public int getLikes(long filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.getLikes();
+    }
+
+    public List<Long> getTopFilmIds(int count) {
+        return getTopFilmIds(count, null, null);
+    }
+
+    public List<Long> getTopFilmIds(int count, Integer genreId, Integer year) {
+        Segment segment = new Segment(genreId == null ? ANY : genreId, year == null ? ANY : year);
+        Collection<Entry> ranking = rankings.get(segment);
+        if (ranking == null) {
+            return new ArrayList<>();
+        }
+        // фильм, у которого прямо сейчас меняются лайки, может встретиться дважды: старой и новой записью
+        Set<Long> filmIds = new LinkedHashSet<>();
+        for (Entry entry : ranking) {
+            if (filmIds.size() >= count) {
+                break;
+            }
+            filmIds.add(entry.getFilmId());
+        }
+        return new ArrayList<>(filmIds);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // новая запись добавляется раньше, чем убирается старая: фильм не пропадает из рейтинга даже на время замены
+    private Entry replace(Entry old, Entry entry) {
+        List<Segment> segments = entry == null ? List.of() : entry.segments();
+        segments.forEach(segment -> rankings
+                .computeIfAbsent(segment, key -> new ConcurrentSkipListSet<>(RANKING_ORDER)).add(entry));
+        if (old != null) {
+            // при том же месте в рейтинге новая запись не добавилась, ее роль в общих сегментах играет старая
+            boolean sameRank = entry != null && RANKING_ORDER.compare(old, entry) == 0;
+            old.segments().stream()
+                    .filter(segment -> !sameRank || !segments.contains(segment))
+                    .forEach(segment -> rankings.get(segment).remove(old));
+        }
+        version.incrementAndGet();
+        return entry;
+    }
+
+    private static int releaseYear(Film film) {
+        return film.getReleaseDate() == null ? ANY : film.getReleaseDate().getYear();
+    }
+
+    private static int[] genreIds(Film film) {
+        if (film.getGenres() == null) {
+            return NO_GENRES;
+        }
+        return film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+    }
+
+    private static int[] toArray(Set<Integer> genreIds) {
+        return genreIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Value
+    private static class Segment {
+        int genreId;
+        int year;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final long filmId;
+        private final int likes;
+        private final int year;
+        private final int[] genreIds;
+
+        private Entry withLikes(int newLikes) {
+            return new Entry(filmId, newLikes, year, genreIds);
+        }
+
+        private List<Segment> segments() {
+            List<Segment> segments = new ArrayList<>(2 + genreIds.length * 2);
+            segments.add(new Segment(ANY, ANY));
+            if (year != ANY) {
+                segments.add(new Segment(ANY, year));
+            }
+            for (int genreId : genreIds) {
+                segments.add(new Segment(genreId, ANY));
+                if (year != ANY) {
+                    segments.add(new Segment(genreId, year));
+                }
+            }
+            return segments;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.service.user;
 
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
@@ -9,12 +10,18 @@ public interface UserService {
 
     User createUser(User user);
 
+    List<Long> createUsers(List<User> users);
+
     User updateUser(User user);
 
     Collection<User> getAllUsers();
 
+    List<User> getUsers(long afterId, int limit);
+
     User getUserById(long id);
 
+    long getUserVersion(long id);
+
     void deleteUserById(long id);
 
     void deleteAllUsers();
@@ -25,5 +32,11 @@ public interface UserService {
 
     List<User> getFriendsList(long id);
 
+    long getFriendsListVersion(long id);
+
     List<User> getCommonFriends(long id, long otherId);
+
+    List<User> getFriendSuggestions(long id, int limit);
+
+    List<Film> getRecommendations(long id, int count);
 }
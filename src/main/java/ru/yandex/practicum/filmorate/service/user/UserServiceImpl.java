@@ -2,29 +2,50 @@ package ru.yandex.practicum.filmorate.service.user;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.exceptions.RejectedFriendRequestException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.dao.AfterCommit;
+import ru.yandex.practicum.filmorate.storage.dao.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
-import ru.yandex.practicum.filmorate.storage.dao.UserStorageImpl;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class UserServiceImpl implements UserService {
+    private static final int MAX_SUGGESTIONS = 100;
+
     private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
     private final FriendshipStorage friendshipStorage;
+    private final LikeStorage likeStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final EntityVersions versions;
 
     @Autowired
-    public UserServiceImpl(UserStorageImpl userStorage, FriendshipStorage friendshipStorage) {
+    public UserServiceImpl(UserStorage userStorage, FilmStorage filmStorage,
+                           FriendshipStorage friendshipStorage, LikeStorage likeStorage,
+                           PopularityLeaderboard leaderboard, EntityVersions versions) {
         this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
         this.friendshipStorage = friendshipStorage;
+        this.likeStorage = likeStorage;
+        this.leaderboard = leaderboard;
+        this.versions = versions;
     }
 
     @Override
@@ -34,6 +55,15 @@ public class UserServiceImpl implements UserService {
         return userStorage.createUser(user);
     }
 
+    @Override
+    @Transactional
+    public List<Long> createUsers(List<User> users) {
+        users.forEach(this::checkUsersNameAndLogin);
+        return userStorage.createUsers(users).stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public User updateUser(User user) {
         checkUsersNameAndLogin(user);
@@ -47,19 +77,33 @@ public class UserServiceImpl implements UserService {
         return userStorage.findAllUsers();
     }
 
+    @Override
+    public List<User> getUsers(long afterId, int limit) {
+        return userStorage.findUsers(afterId, limit);
+    }
+
     @Override
     public User getUserById(long id) {
         return userStorage.findUserById(id);
     }
 
     @Override
+    public long getUserVersion(long id) {
+        return versions.getUserVersion(id);
+    }
+
+    @Override
+    @Transactional
     public void deleteUserById(long id) {
-        userStorage.deleteUserById(id);
+        // лайки, удаленные вместе с пользователем, уходят из рейтинга только после коммита удаления
+        Set<Long> likedFilmIds = userStorage.deleteUserById(id);
+        AfterCommit.run(() -> likedFilmIds.forEach(filmId -> leaderboard.changeLikes(filmId, -1)));
     }
 
     @Override
     public void deleteAllUsers() {
         userStorage.deleteAllUsers();
+        leaderboard.resetLikes();
     }
 
     @Override
@@ -101,12 +145,41 @@ public class UserServiceImpl implements UserService {
         return userStorage.getFriendsList(id);
     }
 
+    // в список входят сами друзья, поэтому версия - наибольшая из версий пользователя и его друзей
+    @Override
+    public long getFriendsListVersion(long id) {
+        long version = versions.getUserVersion(id);
+        for (long friendId : friendshipStorage.getFriendIds(id)) {
+            version = Math.max(version, versions.getUserVersion(friendId));
+        }
+        return version;
+    }
+
     @Override
     public List<User> getCommonFriends(long id, long otherId) {
         checkFriendsId(id, otherId);
         return userStorage.getCommonFriends(id, otherId);
     }
 
+    @Override
+    public List<User> getFriendSuggestions(long id, int limit) {
+        if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new ValidationException("число рекомендаций должно быть от 1 до " + MAX_SUGGESTIONS + ": " + limit);
+        }
+        userStorage.findUserById(id);
+        return userStorage.getFriendSuggestions(id, limit);
+    }
+
+    @Override
+    public List<Film> getRecommendations(long id, int count) {
+        if (count <= 0 || count > MAX_SUGGESTIONS) {
+            throw new ValidationException("число рекомендаций должно быть от 1 до " + MAX_SUGGESTIONS + ": " + count);
+        }
+        userStorage.findUserById(id);
+        return filmStorage.findFilmsByIds(Arrays.stream(likeStorage.getRecommendedFilmIds(id, count))
+                .boxed().collect(Collectors.toList()));
+    }
+
     private void checkUsersNameAndLogin(User user) {
         if (user.getLogin().contains(" ")) {
             throw new ValidationException("логин не должен содержать пробелы: " + user.getLogin());
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public final class AfterCommit {
+    private AfterCommit() {
+    }
+
+    // индексы в памяти меняются только после фиксации транзакции, чтобы откат не оставлял в них лишних связей
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
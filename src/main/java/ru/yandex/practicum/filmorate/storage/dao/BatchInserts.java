@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+final class BatchInserts {
+    private BatchInserts() {
+    }
+
+    static <T> List<Long> insertAndReturnKeys(JdbcTemplate jdbcTemplate, String sql, String keyColumn, List<T> items,
+                                              int batchSize, ParameterizedPreparedStatementSetter<T> setter) {
+        List<Long> keys = new ArrayList<>(items.size());
+        if (items.isEmpty()) {
+            return keys;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(sql, new String[]{keyColumn})) {
+                int inBatch = 0;
+                for (T item : items) {
+                    setter.setValues(ps, item);
+                    ps.addBatch();
+                    if (++inBatch == batchSize) {
+                        executeBatch(ps, keys);
+                        inBatch = 0;
+                    }
+                }
+                if (inBatch > 0) {
+                    executeBatch(ps, keys);
+                }
+            }
+            return null;
+        });
+        return keys;
+    }
+
+    private static void executeBatch(PreparedStatement ps, List<Long> keys) throws SQLException {
+        ps.executeBatch();
+        try (ResultSet generatedKeys = Objects.requireNonNull(ps.getGeneratedKeys())) {
+            while (generatedKeys.next()) {
+                keys.add(generatedKeys.getLong(1));
+            }
+        }
+    }
+}
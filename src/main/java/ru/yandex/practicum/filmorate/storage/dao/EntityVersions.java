@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии фильмов и пользователей для условных GET-запросов. Каждое изменение получает следующее значение общего
+ * счетчика, поэтому версия составного ответа - это максимум версий входящих в него сущностей: любое изменение
+ * строго ее увеличивает. Счетчик начинается от времени запуска, так что версии не повторяются после рестарта.
+ * Версия меняется только после фиксации транзакции, иначе под новой версией мог бы закешироваться старый ответ.
+ * Здесь же, тоже после фиксации, сбрасываются записи кешей films и users: хранилища их сами не трогают.
+ */
+@Component
+public class EntityVersions {
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() << 20);
+    private final Map<Long, Long> films = new ConcurrentHashMap<>();
+    private final Map<Long, Long> users = new ConcurrentHashMap<>();
+    // версия, не меньше которой все версии фильмов (пользователей), - сдвигается при массовых изменениях
+    private final AtomicLong filmsFloor = new AtomicLong(sequence.get());
+    private final AtomicLong usersFloor = new AtomicLong(sequence.get());
+    private final AtomicLong lastFilmChange = new AtomicLong(sequence.get());
+    private final CacheManager cacheManager;
+
+    public EntityVersions(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    public long getFilmVersion(long filmId) {
+        return Math.max(filmsFloor.get(), films.getOrDefault(filmId, 0L));
+    }
+
+    // версия любого списка фильмов: последнее изменение любого фильма
+    public long getFilmsVersion() {
+        return lastFilmChange.get();
+    }
+
+    public long getUserVersion(long userId) {
+        return Math.max(usersFloor.get(), users.getOrDefault(userId, 0L));
+    }
+
+    void filmChanged(long filmId) {
+        AfterCommit.run(() -> stampFilm(filmId));
+    }
+
+    void filmsChanged(Collection<Long> filmIds) {
+        List<Long> ids = List.copyOf(filmIds);
+        AfterCommit.run(() -> ids.forEach(this::stampFilm));
+    }
+
+    void allFilmsChanged() {
+        AfterCommit.run(() -> {
+            clear("films");
+            long version = sequence.incrementAndGet();
+            filmsFloor.accumulateAndGet(version, Math::max);
+            lastFilmChange.accumulateAndGet(version, Math::max);
+            // более поздние версии могли появиться параллельно, их удалять нельзя
+            films.values().removeIf(filmVersion -> filmVersion <= version);
+        });
+    }
+
+    void userChanged(long userId) {
+        AfterCommit.run(() -> stampUser(userId));
+    }
+
+    void usersChanged(Collection<Long> userIds) {
+        List<Long> ids = List.copyOf(userIds);
+        AfterCommit.run(() -> ids.forEach(this::stampUser));
+    }
+
+    void allUsersChanged() {
+        AfterCommit.run(() -> {
+            clear("users");
+            long version = sequence.incrementAndGet();
+            usersFloor.accumulateAndGet(version, Math::max);
+            users.values().removeIf(userVersion -> userVersion <= version);
+        });
+    }
+
+    // данные изменены в обход хранилищ, например sql-скриптом: прежние версии больше ничему не соответствуют
+    public void reset() {
+        long version = sequence.incrementAndGet();
+        filmsFloor.accumulateAndGet(version, Math::max);
+        usersFloor.accumulateAndGet(version, Math::max);
+        lastFilmChange.accumulateAndGet(version, Math::max);
+        films.clear();
+        users.clear();
+    }
+
+    private void stampFilm(long filmId) {
+        // запись в кеш, сделанная читателем до фиксации, содержала бы старые данные
+        evict("films", filmId);
+        long version = sequence.incrementAndGet();
+        films.merge(filmId, version, Math::max);
+        lastFilmChange.accumulateAndGet(version, Math::max);
+    }
+
+    private void stampUser(long userId) {
+        evict("users", userId);
+        users.merge(userId, sequence.incrementAndGet(), Math::max);
+    }
+
+    private void evict(String cacheName, long id) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(id);
+        }
+    }
+
+    private void clear(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
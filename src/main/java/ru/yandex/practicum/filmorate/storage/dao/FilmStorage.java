@@ -2,20 +2,35 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film findFilmById(long id);
 
     long createFilm(Film film);
 
+    List<Long> createFilms(List<Film> films);
+
     void updateFilm(Film film);
 
     List<Film> findAllFilms();
 
+    List<Film> findFilms(long afterId, int limit);
+
+    List<Film> findFilmsByIds(Collection<Long> ids);
+
+    void streamAllFilms(Consumer<Film> consumer);
+
     void deleteFilmById(long id);
 
     void deleteAllFilms();
 
     List<Film> getTopFilms(int count);
+
+    Map<Long, Integer> getLikeCounts();
+
+    Map<Long, Integer> getReleaseYears();
 }
@@ -1,50 +1,96 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
 
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
 @Component
 public class FilmStorageImpl implements FilmStorage {
+    private static final String FILM_SELECT = "select f.film_id, f.title, f.description, f.releasedate, " +
+            "f.duration, f.rating_id from films as f";
+    private static final int EXPORT_FETCH_SIZE = 500;
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportJdbcTemplate;
+    private final SimpleJdbcInsert filmInsert;
+    private final int batchSize;
     private final RatingStorage ratingStorage;
     private final GenreStorage genreStorage;
     private final LikeStorage likeStorage;
+    private final EntityVersions versions;
 
     public FilmStorageImpl(JdbcTemplate jdbcTemplate, RatingStorage ratingStorage, GenreStorage genreStorage,
-                           LikeStorage likeStorage) {
+                           LikeStorage likeStorage, EntityVersions versions, @Value("${filmorate.jdbc.batch-size:500}") int batchSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.filmInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("films")
+                .usingColumns("title", "description", "releasedate", "duration", "rating_id")
+                .usingGeneratedKeyColumns("film_id");
+        this.exportJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportJdbcTemplate.setFetchSize(EXPORT_FETCH_SIZE);
         this.ratingStorage = ratingStorage;
         this.genreStorage = genreStorage;
         this.likeStorage = likeStorage;
+        this.versions = versions;
     }
 
     @Override
     public long createFilm(Film film) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("film_id");
-        return simpleJdbcInsert.executeAndReturnKey(toMap(film)).longValue();
+        long id = filmInsert.executeAndReturnKey(toMap(film)).longValue();
+        versions.filmChanged(id);
+        return id;
+    }
+
+    @Override
+    public List<Long> createFilms(List<Film> films) {
+        String sql = "insert into films(title, description, releasedate, duration, rating_id) values (?, ?, ?, ?, ?)";
+        List<Long> ids = BatchInserts.insertAndReturnKeys(jdbcTemplate, sql, "film_id", films, batchSize,
+                (ps, film) -> {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setDate(3, film.getReleaseDate() == null ? null : Date.valueOf(film.getReleaseDate()));
+                    ps.setObject(4, film.getDuration());
+                    ps.setInt(5, film.getMpa().getId());
+                });
+        versions.filmsChanged(ids);
+        return ids;
     }
 
     @Override
+    @Cacheable(cacheNames = "films", key = "#id")
     public Film findFilmById(long id) {
         try {
-            String sql = "select * from films where film_id = ?";
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeFilm(rs), id);
+            String sql = FILM_SELECT + " where f.film_id = ?";
+            Film film = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeFilm(rs), id);
+            fillGenresAndLikes(List.of(film));
+            return film;
         } catch (EmptyResultDataAccessException exp) {
             throw new IncorrectIdException("фильма с id " + id + " не существует!");
         }
@@ -55,12 +101,51 @@ public class FilmStorageImpl implements FilmStorage {
         jdbcTemplate.update("update films set title = ?, description = ?, releasedate = ?, duration = ?, " +
                         "rating_id = ? where film_id = ?", updateFilm.getName(), updateFilm.getDescription(),
                 updateFilm.getReleaseDate(), updateFilm.getDuration(), updateFilm.getMpa().getId(), updateFilm.getId());
+        versions.filmChanged(updateFilm.getId());
     }
 
     @Override
     public List<Film> findAllFilms() {
-        String sql = "select * from films";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs));
+        String sql = FILM_SELECT + " order by f.film_id";
+        return fillGenresAndLikes(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs)));
+    }
+
+    @Override
+    public List<Film> findFilms(long afterId, int limit) {
+        String sql = FILM_SELECT + " where f.film_id > ? order by f.film_id limit ?";
+        return fillGenresAndLikes(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), afterId, limit));
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        jdbcTemplate.query(FILM_SELECT + " where f.film_id = any(?)", SqlArrays.idsArray(ids), (ResultSet rs) -> {
+            Film film = makeFilm(rs);
+            filmsById.put(film.getId(), film);
+        });
+        List<Film> films = ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return fillGenresAndLikes(films);
+    }
+
+    // жанры и лайки догружаются при открытом курсоре: транзакция держит их запросы на том же соединении
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllFilms(Consumer<Film> consumer) {
+        List<Film> chunk = new ArrayList<>(EXPORT_FETCH_SIZE);
+        exportJdbcTemplate.query(FILM_SELECT + " order by f.film_id", (ResultSet rs) -> {
+            chunk.add(makeFilm(rs));
+            if (chunk.size() == EXPORT_FETCH_SIZE) {
+                fillGenresAndLikes(chunk).forEach(consumer);
+                chunk.clear();
+            }
+        });
+        fillGenresAndLikes(chunk).forEach(consumer);
     }
 
     @Override
@@ -68,6 +153,8 @@ public class FilmStorageImpl implements FilmStorage {
         try {
             findFilmById(id);
             jdbcTemplate.update("delete from films where film_id = ?", id);
+            likeStorage.onFilmDeleted(id);
+            versions.filmChanged(id);
         } catch (EmptyResultDataAccessException exp) {
             throw new IncorrectIdException("фильма с id " + id + " не существует!");
         }
@@ -76,14 +163,34 @@ public class FilmStorageImpl implements FilmStorage {
     @Override
     public void deleteAllFilms() {
         jdbcTemplate.update("delete from films");
+        likeStorage.onAllLikesDeleted();
+        genreStorage.onAllFilmsDeleted();
+        versions.allFilmsChanged();
     }
 
     @Override
     public List<Film> getTopFilms(int count) {
-        String sql = "select f.film_id, f.title, f.description, f.releasedate, f.duration, f.rating_id, " +
-                "lks.sum_likes from films as f left join (select film_id, count(user_id) as sum_likes, " +
-                "from likes group by film_id) as lks on f.film_id = lks.film_id order by lks.sum_likes desc limit ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), count);
+        String sql = FILM_SELECT + " order by f.like_count desc, f.film_id limit ?";
+        return fillGenresAndLikes(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), count));
+    }
+
+    @Override
+    public Map<Long, Integer> getLikeCounts() {
+        Map<Long, Integer> likeCounts = new HashMap<>();
+        jdbcTemplate.query("select film_id, like_count from films", (ResultSet rs) -> {
+            likeCounts.put(rs.getLong("film_id"), rs.getInt("like_count"));
+        });
+        return likeCounts;
+    }
+
+    @Override
+    public Map<Long, Integer> getReleaseYears() {
+        Map<Long, Integer> releaseYears = new HashMap<>();
+        jdbcTemplate.query("select film_id, extract(year from releasedate) as release_year from films " +
+                "where releasedate is not null", (ResultSet rs) -> {
+                    releaseYears.put(rs.getLong("film_id"), rs.getInt("release_year"));
+                });
+        return releaseYears;
     }
 
     private Film makeFilm(ResultSet rs) throws SQLException {
@@ -95,16 +202,27 @@ public class FilmStorageImpl implements FilmStorage {
             releaseDate = rs.getDate("releasedate").toLocalDate();
         }
         Integer duration = (Integer) rs.getObject("duration");
-        int ratingId = rs.getInt("rating_id");
-        Rating rating = ratingStorage.findRatingById(ratingId);
-        Set<Genre> genres = genreStorage.getGenres(id);
-        Set<Long> likes = likeStorage.getLikes(id);
+        Rating rating = null;
+        if (rs.getObject("rating_id") != null) {
+            rating = ratingStorage.findRatingById(rs.getInt("rating_id"));
+        }
         Film film = Film.builder().name(title).description(description).releaseDate(releaseDate).duration(duration)
-                .mpa(rating).genres(genres).likes(likes).build();
+                .mpa(rating).build();
         film.setId(id);
         return film;
     }
 
+    private List<Film> fillGenresAndLikes(List<Film> films) {
+        List<Long> ids = films.stream().map(Film::getId).collect(Collectors.toList());
+        Map<Long, Set<Genre>> genres = genreStorage.getGenresByFilmIds(ids);
+        Map<Long, Set<Long>> likes = likeStorage.getLikesByFilmIds(ids);
+        for (Film film : films) {
+            film.setGenres(genres.getOrDefault(film.getId(), new TreeSet<>(Comparator.comparing(Genre::getId))));
+            film.setLikes(likes.getOrDefault(film.getId(), new HashSet<>()));
+        }
+        return films;
+    }
+
     public Map<String, Object> toMap(Film film) {
         Map<String, Object> values = new HashMap<>();
         values.put("title", film.getName());
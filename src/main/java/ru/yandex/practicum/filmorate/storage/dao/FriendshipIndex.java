@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Списки смежности дружбы в памяти: для каждого пользователя отсортированный массив id друзей (строки
+ * friendship_statuses с его user_id) и массив тех, у кого он сам в друзьях. Опубликованный массив не меняется:
+ * запись под общим замком собирает новую копию, чтение идет без блокировок.
+ */
+final class FriendshipIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private volatile long maxUserId;
+
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> followers = new ConcurrentHashMap<>();
+
+    long[] getFriends(long userId) {
+        return friends.getOrDefault(userId, EMPTY);
+    }
+
+    // те, у кого userId в друзьях
+    long[] getFollowers(long userId) {
+        return followers.getOrDefault(userId, EMPTY);
+    }
+
+    long[] getCommonFriends(long userId, long otherId) {
+        return SortedIds.intersect(getFriends(userId), getFriends(otherId));
+    }
+
+    /**
+     * Кандидаты в друзья: пользователи не из списка друзей userId по убыванию числа общих друзей (в том же смысле,
+     * что и getCommonFriends), при равенстве - по возрастанию id. Общие друзья с кандидатом c - это друзья f
+     * пользователя, у которых c есть в followers[f], поэтому обход идет только по двум уровням смежности,
+     * а лучшие limit кандидатов отбираются кучей ограниченного размера.
+     */
+    long[] suggest(long userId, int limit) {
+        long[] userFriends = getFriends(userId);
+        if (userFriends.length == 0) {
+            return EMPTY;
+        }
+        long[][] candidates = new long[userFriends.length][];
+        int paths = 0;
+        for (int i = 0; i < userFriends.length; i++) {
+            candidates[i] = followers.getOrDefault(userFriends[i], EMPTY);
+            paths += candidates[i].length;
+        }
+        // maxUserId растет раньше публикации массивов и никогда не уменьшается, поэтому все прочитанные выше id
+        // в него укладываются
+        IdCounter mutual = IdCounter.create(maxUserId, paths);
+        mutual.exclude(userId);
+        for (long friend : userFriends) {
+            mutual.exclude(friend);
+        }
+        for (long[] followersOfFriend : candidates) {
+            for (long candidate : followersOfFriend) {
+                mutual.increment(candidate);
+            }
+        }
+        TopK top = new TopK(limit);
+        for (int i = 0; i < mutual.slots(); i++) {
+            top.offer(mutual.candidate(i), mutual.count(i));
+        }
+        return top.sortedIds();
+    }
+
+    synchronized void add(long userId, long friendId) {
+        maxUserId = Math.max(maxUserId, Math.max(userId, friendId));
+        friends.put(userId, SortedIds.insert(getFriends(userId), friendId));
+        followers.put(friendId, SortedIds.insert(followers.getOrDefault(friendId, EMPTY), userId));
+    }
+
+    synchronized void remove(long userId, long friendId) {
+        SortedIds.putOrRemove(friends, userId, SortedIds.delete(getFriends(userId), friendId));
+        SortedIds.putOrRemove(followers, friendId, SortedIds.delete(followers.getOrDefault(friendId, EMPTY), userId));
+    }
+
+    synchronized void removeUser(long userId) {
+        for (long follower : followers.getOrDefault(userId, EMPTY)) {
+            SortedIds.putOrRemove(friends, follower, SortedIds.delete(getFriends(follower), userId));
+        }
+        for (long friend : getFriends(userId)) {
+            SortedIds.putOrRemove(followers, friend, SortedIds.delete(followers.getOrDefault(friend, EMPTY), userId));
+        }
+        friends.remove(userId);
+        followers.remove(userId);
+    }
+
+    /**
+     * Заменяет содержимое индекса; массивы в newFriends должны быть отсортированы.
+     */
+    synchronized void replaceAll(Map<Long, long[]> newFriends) {
+        long newMaxUserId = 0;
+        for (Map.Entry<Long, long[]> entry : newFriends.entrySet()) {
+            long[] ids = entry.getValue();
+            newMaxUserId = Math.max(newMaxUserId, Math.max(entry.getKey(), ids.length == 0 ? 0 : ids[ids.length - 1]));
+        }
+        maxUserId = Math.max(maxUserId, newMaxUserId);
+        friends.clear();
+        followers.clear();
+        friends.putAll(newFriends);
+        Map<Long, int[]> followersCount = new HashMap<>();
+        newFriends.values().forEach(ids -> {
+            for (long id : ids) {
+                followersCount.computeIfAbsent(id, key -> new int[1])[0]++;
+            }
+        });
+        Map<Long, long[]> newFollowers = new HashMap<>();
+        followersCount.forEach((id, count) -> newFollowers.put(id, new long[count[0]]));
+        // обход пользователей по возрастанию id сразу дает отсортированные массивы подписчиков
+        newFriends.keySet().stream().sorted().forEach(userId -> {
+            for (long friendId : newFriends.get(userId)) {
+                int[] position = followersCount.get(friendId);
+                long[] ids = newFollowers.get(friendId);
+                ids[ids.length - position[0]--] = userId;
+            }
+        });
+        followers.putAll(newFollowers);
+    }
+
+    synchronized void clear() {
+        friends.clear();
+        followers.clear();
+    }
+}
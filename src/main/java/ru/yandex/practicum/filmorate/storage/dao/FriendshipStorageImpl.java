@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.RejectedFriendRequestException;
+import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
+@Component
+public class FriendshipStorageImpl implements FriendshipStorage {
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityVersions versions;
+    private final FriendshipIndex index = new FriendshipIndex();
+
+    public FriendshipStorageImpl(JdbcTemplate jdbcTemplate, EntityVersions versions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+    }
+
+    @PostConstruct
+    public void rebuildIndex() {
+        Map<Long, List<Long>> friendsByUser = new HashMap<>();
+        jdbcTemplate.query("select user_id, friend_id from friendship_statuses order by user_id, friend_id",
+                (ResultSet rs) -> {
+                    friendsByUser.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>())
+                            .add(rs.getLong("friend_id"));
+                });
+        Map<Long, long[]> friends = new HashMap<>();
+        friendsByUser.forEach((userId, ids) -> friends.put(userId,
+                ids.stream().mapToLong(Long::longValue).toArray()));
+        index.replaceAll(friends);
+    }
+
+    @Override
+    public void addFriend(long id, long friendId, FriendStatus friendStatus) {
+        try {
+            jdbcTemplate.update("insert into friendship_statuses(user_id, friend_id, status) values (?, ?, ?)", id,
+                    friendId, friendStatus.toString());
+            AfterCommit.run(() -> index.add(id, friendId));
+            versions.userChanged(id);
+        } catch (DuplicateKeyException exp) {
+            throw new RejectedFriendRequestException("Заявка в друзья пользователю " + friendId + " уже существует");
+        }
+    }
+
+    @Override
+    public void deleteFriend(long id, long friendId) {
+        jdbcTemplate.update("delete from friendship_statuses where user_id = ? and friend_id = ?", id, friendId);
+        jdbcTemplate.update("delete from friendship_statuses where user_id = ? and friend_id = ?", friendId, id);
+        AfterCommit.run(() -> {
+            index.remove(id, friendId);
+            index.remove(friendId, id);
+        });
+        versions.usersChanged(List.of(id, friendId));
+    }
+
+    @Override
+    public long[] getFriendIds(long userId) {
+        return index.getFriends(userId);
+    }
+
+    @Override
+    public long[] getCommonFriendIds(long userId, long otherId) {
+        return index.getCommonFriends(userId, otherId);
+    }
+
+    @Override
+    public long[] getFollowerIds(long userId) {
+        return index.getFollowers(userId);
+    }
+
+    @Override
+    public long[] getSuggestedFriendIds(long userId, int limit) {
+        return index.suggest(userId, limit);
+    }
+
+    // строки дружбы удаляются каскадно вместе с пользователями, индекс нужно поправить отдельно
+    @Override
+    public void onUserDeleted(long userId) {
+        AfterCommit.run(() -> index.removeUser(userId));
+    }
+
+    @Override
+    public void onAllUsersDeleted() {
+        AfterCommit.run(index::clear);
+    }
+
+    @Override
+    public Map<Long, FriendStatus> getFriendsStatuses(long userId) {
+        SqlRowSet statusesRows = jdbcTemplate.queryForRowSet("select friend_id, status from friendship_statuses " +
+                "where user_id = ?", userId);
+        Map<Long, FriendStatus> friendStatusMap = new HashMap<>();
+        while (statusesRows.next()) {
+            friendStatusMap.put((long) statusesRows.getInt("friend_id"),
+                    FriendStatus.valueOf(statusesRows.getString("status")));
+        }
+        return friendStatusMap;
+    }
+
+    @Override
+    public Map<Long, Map<Long, FriendStatus>> getFriendsStatusesByUserIds(Collection<Long> userIds) {
+        Map<Long, Map<Long, FriendStatus>> statusesByUser = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return statusesByUser;
+        }
+        jdbcTemplate.query("select user_id, friend_id, status from friendship_statuses where user_id = any(?)",
+                SqlArrays.idsArray(userIds), (ResultSet rs) -> {
+                    statusesByUser.computeIfAbsent(rs.getLong("user_id"), id -> new HashMap<>())
+                            .put(rs.getLong("friend_id"), FriendStatus.valueOf(rs.getString("status")));
+                });
+        return statusesByUser;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Slf4j
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
+@Component
+public class GenreStorageImpl implements GenreStorage {
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final EntityVersions versions;
+    private volatile Genre[] genresById = new Genre[0];
+
+    public GenreStorageImpl(JdbcTemplate jdbcTemplate, EntityVersions versions,
+                            @Value("${filmorate.jdbc.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public synchronized void refresh() {
+        List<Genre> genres = jdbcTemplate.query("select * from genres", (rs, rowNum) -> makeGenre(rs));
+        int maxId = genres.stream().mapToInt(Genre::getId).max().orElse(0);
+        Genre[] loaded = new Genre[maxId + 1];
+        genres.forEach(genre -> loaded[genre.getId()] = genre);
+        genresById = loaded;
+        log.info("справочник жанров загружен: {}", genres.size());
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return Arrays.stream(genresById)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Genre findGenreById(int id) {
+        // новые жанры появляются только после явного refresh: промах не должен перечитывать справочник
+        Genre genre = lookup(id);
+        if (genre == null) {
+            throw new IncorrectIdException("жанра с id " + id + " не существует!");
+        }
+        return genre;
+    }
+
+    private Genre lookup(int id) {
+        Genre[] genres = genresById;
+        return id > 0 && id < genres.length ? genres[id] : null;
+    }
+
+    private Genre makeGenre(ResultSet rs) throws SQLException {
+        int id = rs.getInt("genre_id");
+        String genreName = rs.getString("genre");
+        return new Genre(id, genreName);
+    }
+
+    @Override
+    public Set<Genre> getGenres(long filmId) {
+        SqlRowSet genresRows = jdbcTemplate.queryForRowSet("select genre_id from films_genres where film_id = ?",
+                filmId);
+        Set<Genre> strGenres = new HashSet<>();
+        while (genresRows.next()) {
+            strGenres.add(findGenreById(genresRows.getInt("genre_id")));
+        }
+        return strGenres;
+    }
+
+    @Override
+    public Map<Long, Set<Genre>> getGenresByFilmIds(Collection<Long> filmIds) {
+        Map<Long, Set<Genre>> genresByFilm = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return genresByFilm;
+        }
+        jdbcTemplate.query("select film_id, genre_id from films_genres where film_id = any(?)",
+                SqlArrays.idsArray(filmIds), (ResultSet rs) -> {
+                    genresByFilm.computeIfAbsent(rs.getLong("film_id"),
+                                    id -> new TreeSet<>(Comparator.comparing(Genre::getId)))
+                            .add(findGenreById(rs.getInt("genre_id")));
+                });
+        return genresByFilm;
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getGenreIdsByFilm() {
+        Map<Long, Set<Integer>> genreIds = new HashMap<>();
+        jdbcTemplate.query("select film_id, genre_id from films_genres", (ResultSet rs) -> {
+            genreIds.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getInt("genre_id"));
+        });
+        return genreIds;
+    }
+
+    @Override
+    public void createGenres(long filmId, Film film) {
+        insertGenres(filmId, toGenreIds(film.getGenres()));
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    public void createGenres(List<Film> films) {
+        List<long[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            toGenreIds(film.getGenres()).forEach(genreId -> filmGenres.add(new long[]{film.getId(), genreId}));
+        }
+        if (filmGenres.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into films_genres(film_id, genre_id) values (?, ?)", filmGenres, batchSize,
+                (ps, filmGenre) -> {
+                    ps.setLong(1, filmGenre[0]);
+                    ps.setLong(2, filmGenre[1]);
+                });
+    }
+
+    @Override
+    @Transactional
+    public void updateGenres(long filmId, Set<Genre> genres) {
+        Set<Integer> currentIds = new HashSet<>(jdbcTemplate.queryForList(
+                "select genre_id from films_genres where film_id = ?", Integer.class, filmId));
+        Set<Integer> newIds = toGenreIds(genres);
+        Set<Integer> removedIds = new HashSet<>(currentIds);
+        removedIds.removeAll(newIds);
+        newIds.removeAll(currentIds);
+        if (!removedIds.isEmpty()) {
+            jdbcTemplate.batchUpdate("delete from films_genres where film_id = ? and genre_id = ?", removedIds,
+                    batchSize, (ps, genreId) -> {
+                        ps.setLong(1, filmId);
+                        ps.setInt(2, genreId);
+                    });
+        }
+        insertGenres(filmId, newIds);
+        versions.filmChanged(filmId);
+    }
+
+    private void insertGenres(long filmId, Set<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into films_genres(film_id, genre_id) values (?, ?)", genreIds, batchSize,
+                (ps, genreId) -> {
+                    ps.setLong(1, filmId);
+                    ps.setInt(2, genreId);
+                });
+    }
+
+    private Set<Integer> toGenreIds(Set<Genre> genres) {
+        if (genres == null) {
+            return new HashSet<>();
+        }
+        return genres.stream().map(Genre::getId).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    @Override
+    public void deleteGenres(long filmId) {
+        jdbcTemplate.update("delete from films_genres where film_id = ?", filmId);
+        versions.filmChanged(filmId);
+    }
+
+    // строки films_genres удаляются каскадно вместе с фильмами
+    @Override
+    public void onAllFilmsDeleted() {
+    }
+}
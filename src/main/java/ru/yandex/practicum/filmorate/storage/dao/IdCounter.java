@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.Arrays;
+
+/**
+ * Счетчик совпадений по id кандидатов для индексов в памяти. Исключенные id получают заведомо отрицательное
+ * значение, поэтому при отборе достаточно пропустить ячейки со счетом не больше нуля.
+ */
+interface IdCounter {
+    // до этого id счетчик может быть массивом, индексируемым id, иначе это хеш-таблица
+    long DENSE_ID_LIMIT = 1 << 22;
+    // массив берется, только если на каждый ожидаемый id приходится не больше стольких ячеек: память под счетчик
+    // растет с числом обходимых связей, а не с числом пользователей
+    int DENSE_SLOTS_PER_ID = 8;
+
+    static IdCounter create(long maxId, int expected) {
+        return maxId <= DENSE_ID_LIMIT && maxId <= (long) expected * DENSE_SLOTS_PER_ID
+                ? new Dense((int) maxId, expected) : new Hashed(expected);
+    }
+
+    void increment(long id);
+
+    void set(long id, int count);
+
+    default void exclude(long id) {
+        increment(id);
+        set(id, Integer.MIN_VALUE);
+    }
+
+    int slots();
+
+    long candidate(int slot);
+
+    int count(int slot);
+
+    /**
+     * Счет по индексу id: id выдаются последовательно, так что массив почти без пропусков и намного быстрее
+     * хеширования. Ячейки перебираются по списку встретившихся id.
+     */
+    final class Dense implements IdCounter {
+        private final int[] counts;
+        private long[] touched;
+        private int size;
+
+        private Dense(int maxId, int expected) {
+            counts = new int[maxId + 1];
+            touched = new long[Math.min(Math.max(expected, 16), maxId + 1)];
+        }
+
+        @Override
+        public void increment(long id) {
+            if (counts[(int) id]++ == 0) {
+                if (size == touched.length) {
+                    touched = Arrays.copyOf(touched, size * 2);
+                }
+                touched[size++] = id;
+            }
+        }
+
+        @Override
+        public void set(long id, int count) {
+            counts[(int) id] = count;
+        }
+
+        @Override
+        public int slots() {
+            return size;
+        }
+
+        @Override
+        public long candidate(int slot) {
+            return touched[slot];
+        }
+
+        @Override
+        public int count(int slot) {
+            return counts[(int) touched[slot]];
+        }
+    }
+
+    /**
+     * Счетчик long -> int с открытой адресацией для слишком больших id. Id положительные, поэтому 0 обозначает
+     * свободную ячейку.
+     */
+    final class Hashed implements IdCounter {
+        private static final long FREE = 0;
+
+        private long[] keys;
+        private int[] counts;
+        private int size;
+
+        private Hashed(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            keys = new long[Math.min(capacity, 1 << 30)];
+            counts = new int[keys.length];
+        }
+
+        @Override
+        public void increment(long id) {
+            int slot = slot(id);
+            if (keys[slot] == FREE) {
+                keys[slot] = id;
+                size++;
+            }
+            counts[slot]++;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        @Override
+        public void set(long id, int count) {
+            counts[slot(id)] = count;
+        }
+
+        @Override
+        public int slots() {
+            return keys.length;
+        }
+
+        @Override
+        public long candidate(int slot) {
+            return keys[slot];
+        }
+
+        @Override
+        public int count(int slot) {
+            return keys[slot] == FREE ? 0 : counts[slot];
+        }
+
+        private int slot(long id) {
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            while (keys[slot] != FREE && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int hash(long id) {
+            long mixed = id * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+}
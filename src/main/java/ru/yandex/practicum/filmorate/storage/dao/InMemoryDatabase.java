@@ -0,0 +1,469 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Данные режима filmorate.storage.type=in-memory: таблицы фильмов и пользователей, жанры, лайки и дружба.
+ * DAO in-memory работают поверх этого класса так же, как jdbc-реализации поверх базы, и каскадное удаление
+ * тоже делается здесь. Чтение идет без блокировок, изменения выполняются под общим замком и в том же порядке
+ * пишутся в {@link StorageJournal}. При старте состояние восстанавливается до того, как его прочитает
+ * кто-то еще; снимки делаются в фоне раз в snapshot-interval-ms или после snapshot-records записей журнала -
+ * этим ограничивается время восстановления.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class InMemoryDatabase {
+    private static final long CHECK_INTERVAL_MILLIS = 1_000;
+
+    private final Storage<Film> films = new Storage<>();
+    private final Storage<User> users = new Storage<>();
+    // наборы жанров и карты статусов после записи не меняются, изменение заменяет их целиком
+    private final Map<Long, Set<Genre>> genres = new ConcurrentHashMap<>();
+    private final LikeIndex likes = new LikeIndex();
+    private final Map<Long, Map<Long, FriendStatus>> friendStatuses = new ConcurrentHashMap<>();
+    private final FriendshipIndex friendships = new FriendshipIndex();
+    private final StorageJournal journal;
+    private final long snapshotIntervalMillis;
+    private final long snapshotRecords;
+    private final Object writeLock = new Object();
+    private final Object snapshotMonitor = new Object();
+    private final Object timer = new Object();
+    private volatile boolean running;
+    private volatile long lastSnapshotMillis;
+    private Thread snapshotter;
+
+    @Autowired
+    public InMemoryDatabase(StorageJournal journal,
+                            @Value("${filmorate.storage.journal.snapshot-interval-ms:600000}")
+                            long snapshotIntervalMillis,
+                            @Value("${filmorate.storage.journal.snapshot-records:1000000}") long snapshotRecords) {
+        this.journal = journal;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.snapshotRecords = snapshotRecords;
+    }
+
+    // бин оборачивается прокси StorageMetricsAspect, поэтому таблицы отдаются методами, а не полями; DAO
+    // запоминают ссылки при создании и читают их напрямую, изменения идут только через методы ниже
+    Storage<Film> films() {
+        return films;
+    }
+
+    Storage<User> users() {
+        return users;
+    }
+
+    Map<Long, Set<Genre>> genres() {
+        return Collections.unmodifiableMap(genres);
+    }
+
+    LikeIndex likes() {
+        return likes;
+    }
+
+    Map<Long, Map<Long, FriendStatus>> friendStatuses() {
+        return Collections.unmodifiableMap(friendStatuses);
+    }
+
+    FriendshipIndex friendships() {
+        return friendships;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        long started = System.nanoTime();
+        long records = journal.recover(this::replay);
+        log.info("хранилище восстановлено за {} мс: фильмов {}, пользователей {}, прочитано записей {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), films.size(), users.size(), records);
+        journal.start();
+        lastSnapshotMillis = System.currentTimeMillis();
+        running = true;
+        snapshotter = new Thread(this::runSnapshots, "storage-snapshot");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (snapshotter != null) {
+            synchronized (timer) {
+                running = false;
+                timer.notifyAll();
+            }
+            snapshotter.join();
+            snapshotter = null;
+        }
+        journal.stop();
+    }
+
+    /**
+     * Снимок текущего состояния. Запись не останавливается: снимок начинается с нового сегмента журнала,
+     * а изменения, попавшие в снимок во время его записи, при восстановлении просто применятся еще раз.
+     */
+    public void snapshot() throws IOException {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        synchronized (snapshotMonitor) {
+            long started = System.nanoTime();
+            long index;
+            synchronized (writeLock) {
+                index = journal.rotate();
+            }
+            long records = journal.writeSnapshot(index, this::dump);
+            lastSnapshotMillis = System.currentTimeMillis();
+            log.info("снимок хранилища {} записан за {} мс, записей {}", index,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), records);
+        }
+    }
+
+    Film insertFilm(Film row) {
+        return write(() -> films.create(row), InMemoryDatabase::putFilm);
+    }
+
+    List<Film> insertFilms(List<Film> rows) {
+        return write(() -> films.createAll(rows),
+                (buffer, created) -> created.forEach(film -> putFilm(buffer, film)));
+    }
+
+    void updateFilm(Film row) {
+        write(() -> films.update(row), InMemoryDatabase::putFilm);
+    }
+
+    boolean deleteFilm(long id) {
+        return write(() -> removeFilm(id),
+                (buffer, removed) -> buffer.begin(RecordType.FILM_DELETE).putLong(id).end());
+    }
+
+    void deleteAllFilms() {
+        write(() -> {
+            clearFilms();
+            return true;
+        }, (buffer, cleared) -> buffer.begin(RecordType.FILMS_CLEAR).end());
+    }
+
+    User insertUser(User row) {
+        return write(() -> users.create(row), InMemoryDatabase::putUser);
+    }
+
+    List<User> insertUsers(List<User> rows) {
+        return write(() -> users.createAll(rows),
+                (buffer, created) -> created.forEach(user -> putUser(buffer, user)));
+    }
+
+    void updateUser(User row) {
+        write(() -> users.update(row), InMemoryDatabase::putUser);
+    }
+
+    boolean deleteUser(long id) {
+        return write(() -> removeUser(id),
+                (buffer, removed) -> buffer.begin(RecordType.USER_DELETE).putLong(id).end());
+    }
+
+    void deleteAllUsers() {
+        write(() -> {
+            clearUsers();
+            return true;
+        }, (buffer, cleared) -> buffer.begin(RecordType.USERS_CLEAR).end());
+    }
+
+    // пустой набор удаляет жанры фильма
+    void putGenres(long filmId, Set<Genre> filmGenres) {
+        write(() -> setGenres(filmId, filmGenres), (buffer, stored) -> putGenres(buffer, filmId, stored));
+    }
+
+    // false - лайк уже есть или фильма либо пользователя нет
+    boolean addLike(long filmId, long userId) {
+        return write(() -> like(filmId, userId), (buffer, added) -> {
+            if (added) {
+                buffer.begin(RecordType.LIKE_ADD).putLong(filmId).putLong(userId).end();
+            }
+        });
+    }
+
+    boolean removeLike(long filmId, long userId) {
+        return write(() -> likes.remove(filmId, userId), (buffer, removed) -> {
+            if (removed) {
+                buffer.begin(RecordType.LIKE_REMOVE).putLong(filmId).putLong(userId).end();
+            }
+        });
+    }
+
+    // false - заявка этому другу уже есть
+    boolean addFriend(long userId, long friendId, FriendStatus status) {
+        return write(() -> {
+            if (friendStatuses.getOrDefault(userId, Map.of()).containsKey(friendId)) {
+                return false;
+            }
+            putFriend(userId, friendId, status);
+            return true;
+        }, (buffer, added) -> {
+            if (added) {
+                putFriend(buffer, userId, friendId, status);
+            }
+        });
+    }
+
+    void deleteFriendship(long userId, long friendId) {
+        write(() -> {
+            removeFriendship(userId, friendId);
+            return true;
+        }, (buffer, removed) -> buffer.begin(RecordType.FRIENDSHIP_DELETE).putLong(userId).putLong(friendId).end());
+    }
+
+    private <T> T write(Supplier<T> mutation, BiConsumer<RecordBuffer, T> record) {
+        T result;
+        long seq;
+        synchronized (writeLock) {
+            journal.checkAvailable();
+            result = mutation.get();
+            seq = journal.append(buffer -> record.accept(buffer, result));
+        }
+        journal.awaitDurable(seq);
+        return result;
+    }
+
+    private boolean removeFilm(long id) {
+        boolean removed = films.remove(id);
+        genres.remove(id);
+        likes.removeFilm(id);
+        return removed;
+    }
+
+    private void clearFilms() {
+        films.deleteAll();
+        genres.clear();
+        likes.clear();
+    }
+
+    private boolean removeUser(long id) {
+        boolean removed = users.remove(id);
+        for (long follower : friendships.getFollowers(id)) {
+            removeStatus(follower, id);
+        }
+        friendStatuses.remove(id);
+        friendships.removeUser(id);
+        likes.removeUser(id);
+        return removed;
+    }
+
+    private void clearUsers() {
+        users.deleteAll();
+        friendStatuses.clear();
+        friendships.clear();
+        likes.clear();
+    }
+
+    private Set<Genre> setGenres(long filmId, Set<Genre> filmGenres) {
+        if (filmGenres == null || filmGenres.isEmpty()) {
+            genres.remove(filmId);
+            return Set.of();
+        }
+        Set<Genre> sorted = new TreeSet<>(Comparator.comparing(Genre::getId));
+        sorted.addAll(filmGenres);
+        Set<Genre> stored = Collections.unmodifiableSet(sorted);
+        genres.put(filmId, stored);
+        return stored;
+    }
+
+    private boolean like(long filmId, long userId) {
+        return films.find(filmId) != null && users.find(userId) != null && likes.add(filmId, userId);
+    }
+
+    private void putFriend(long userId, long friendId, FriendStatus status) {
+        Map<Long, FriendStatus> updated = new HashMap<>(friendStatuses.getOrDefault(userId, Map.of()));
+        updated.put(friendId, status);
+        friendStatuses.put(userId, Map.copyOf(updated));
+        friendships.add(userId, friendId);
+    }
+
+    private void removeFriendship(long userId, long friendId) {
+        removeStatus(userId, friendId);
+        removeStatus(friendId, userId);
+        friendships.remove(userId, friendId);
+        friendships.remove(friendId, userId);
+    }
+
+    private void removeStatus(long userId, long friendId) {
+        Map<Long, FriendStatus> userStatuses = friendStatuses.get(userId);
+        if (userStatuses == null || !userStatuses.containsKey(friendId)) {
+            return;
+        }
+        Map<Long, FriendStatus> updated = new HashMap<>(userStatuses);
+        updated.remove(friendId);
+        if (updated.isEmpty()) {
+            friendStatuses.remove(userId);
+        } else {
+            friendStatuses.put(userId, Map.copyOf(updated));
+        }
+    }
+
+    // те же изменения, что и при записи, но без журнала
+    private void replay(RecordReader record) {
+        switch (record.type()) {
+            case SEQUENCES:
+                films.advanceId(record.getLong());
+                users.advanceId(record.getLong());
+                break;
+            case FILM_PUT:
+                films.restore(readFilm(record));
+                break;
+            case FILM_DELETE:
+                removeFilm(record.getLong());
+                break;
+            case FILMS_CLEAR:
+                clearFilms();
+                break;
+            case USER_PUT:
+                users.restore(readUser(record));
+                break;
+            case USER_DELETE:
+                removeUser(record.getLong());
+                break;
+            case USERS_CLEAR:
+                clearUsers();
+                break;
+            case GENRES_PUT:
+                long filmId = record.getLong();
+                Set<Genre> filmGenres = new TreeSet<>(Comparator.comparing(Genre::getId));
+                for (int i = record.getInt(); i > 0; i--) {
+                    filmGenres.add(new Genre(record.getInt(), record.getString()));
+                }
+                setGenres(filmId, filmGenres);
+                break;
+            case LIKE_ADD:
+                long likedFilmId = record.getLong();
+                like(likedFilmId, record.getLong());
+                break;
+            case LIKE_REMOVE:
+                long unlikedFilmId = record.getLong();
+                likes.remove(unlikedFilmId, record.getLong());
+                break;
+            case FRIEND_ADD:
+                long userId = record.getLong();
+                long friendId = record.getLong();
+                putFriend(userId, friendId, FriendStatus.valueOf(record.getString()));
+                break;
+            case FRIENDSHIP_DELETE:
+                long formerUserId = record.getLong();
+                removeFriendship(formerUserId, record.getLong());
+                break;
+        }
+    }
+
+    private void dump(SnapshotWriter out) {
+        out.write(buffer -> buffer.begin(RecordType.SEQUENCES).putLong(films.getLastId()).putLong(users.getLastId())
+                .end());
+        films.forEach(film -> out.write(buffer -> putFilm(buffer, film)));
+        users.forEach(user -> out.write(buffer -> putUser(buffer, user)));
+        genres.forEach((filmId, filmGenres) -> out.write(buffer -> putGenres(buffer, filmId, filmGenres)));
+        likes.forEachUser((userId, filmIds) -> {
+            for (long filmId : filmIds) {
+                out.write(buffer -> buffer.begin(RecordType.LIKE_ADD).putLong(filmId).putLong(userId).end());
+            }
+        });
+        friendStatuses.forEach((userId, statuses) -> statuses.forEach((friendId, status) ->
+                out.write(buffer -> putFriend(buffer, userId, friendId, status))));
+    }
+
+    private void runSnapshots() {
+        while (running) {
+            synchronized (timer) {
+                try {
+                    if (running) {
+                        timer.wait(Math.min(CHECK_INTERVAL_MILLIS, snapshotIntervalMillis));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            long records = journal.getRecordsSinceRotation();
+            boolean due = records >= snapshotRecords
+                    || records > 0 && System.currentTimeMillis() - lastSnapshotMillis >= snapshotIntervalMillis;
+            if (running && due) {
+                try {
+                    snapshot();
+                } catch (IOException | RuntimeException e) {
+                    log.error("не удалось записать снимок хранилища", e);
+                }
+            }
+        }
+    }
+
+    private static void putFilm(RecordBuffer buffer, Film film) {
+        buffer.begin(RecordType.FILM_PUT).putLong(film.getId()).putString(film.getName())
+                .putString(film.getDescription()).putDate(film.getReleaseDate())
+                .putInt(film.getDuration() == null ? -1 : film.getDuration());
+        if (film.getMpa() == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(film.getMpa().getId()).putString(film.getMpa().getName());
+        }
+        buffer.end();
+    }
+
+    private static Film readFilm(RecordReader record) {
+        long id = record.getLong();
+        Film film = Film.builder().name(record.getString()).description(record.getString())
+                .releaseDate(record.getDate()).build();
+        int duration = record.getInt();
+        film.setDuration(duration < 0 ? null : duration);
+        int mpaId = record.getInt();
+        film.setMpa(mpaId < 0 ? null : new Rating(mpaId, record.getString()));
+        film.setId(id);
+        return film;
+    }
+
+    private static void putUser(RecordBuffer buffer, User user) {
+        buffer.begin(RecordType.USER_PUT).putLong(user.getId()).putString(user.getEmail())
+                .putString(user.getLogin()).putString(user.getName()).putDate(user.getBirthday()).end();
+    }
+
+    private static User readUser(RecordReader record) {
+        long id = record.getLong();
+        User user = User.builder().email(record.getString()).login(record.getString()).name(record.getString())
+                .birthday(record.getDate()).build();
+        user.setId(id);
+        return user;
+    }
+
+    private static void putGenres(RecordBuffer buffer, long filmId, Set<Genre> filmGenres) {
+        buffer.begin(RecordType.GENRES_PUT).putLong(filmId).putInt(filmGenres.size());
+        for (Genre genre : filmGenres) {
+            buffer.putInt(genre.getId()).putString(genre.getName());
+        }
+        buffer.end();
+    }
+
+    private static void putFriend(RecordBuffer buffer, long userId, long friendId, FriendStatus status) {
+        buffer.begin(RecordType.FRIEND_ADD).putLong(userId).putLong(friendId).putString(status.name()).end();
+    }
+}
@@ -1,9 +1,187 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Фильмы в памяти процесса, filmorate.storage.type=in-memory. Как и в базе, в таблице {@link InMemoryDatabase}
+ * лежат только поля самого фильма, а жанры и лайки хранятся отдельно и подставляются при чтении. Наружу отдаются
+ * копии: сохраненный объект никто, кроме хранилища, не меняет. Кеш фильмов здесь не нужен: чтение по id - одно
+ * обращение к таблице.
+ */
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
 @Component("inMemoryFilmStorage")
-public class InMemoryFilmStorage extends Storage<Film> {
+public class InMemoryFilmStorage implements FilmStorage {
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    private final InMemoryDatabase database;
+    private final Storage<Film> films;
+    private final Map<Long, Set<Genre>> genres;
+    private final LikeIndex likes;
+    private final RatingStorage ratingStorage;
+    private final GenreStorage genreStorage;
+    private final EntityVersions versions;
+
+    public InMemoryFilmStorage(InMemoryDatabase database, RatingStorage ratingStorage, GenreStorage genreStorage,
+                               EntityVersions versions) {
+        this.database = database;
+        this.films = database.films();
+        this.genres = database.genres();
+        this.likes = database.likes();
+        this.ratingStorage = ratingStorage;
+        this.genreStorage = genreStorage;
+        this.versions = versions;
+    }
+
+    @Override
+    public long createFilm(Film film) {
+        checkGenres(film);
+        long id = database.insertFilm(toRow(film)).getId();
+        versions.filmChanged(id);
+        return id;
+    }
+
+    @Override
+    public List<Long> createFilms(List<Film> films) {
+        films.forEach(this::checkGenres);
+        List<Film> rows = films.stream().map(this::toRow).collect(Collectors.toList());
+        List<Long> ids = database.insertFilms(rows).stream().map(Film::getId).collect(Collectors.toList());
+        versions.filmsChanged(ids);
+        return ids;
+    }
+
+    @Override
+    public Film findFilmById(long id) {
+        Film film = films.find(id);
+        if (film == null) {
+            throw new IncorrectIdException("фильма с id " + id + " не существует!");
+        }
+        return fillGenresAndLikes(List.of(film)).get(0);
+    }
+
+    @Override
+    public void updateFilm(Film updateFilm) {
+        findFilmById(updateFilm.getId());
+        checkGenres(updateFilm);
+        Film row = toRow(updateFilm);
+        row.setId(updateFilm.getId());
+        database.updateFilm(row);
+        versions.filmChanged(updateFilm.getId());
+    }
+
+    @Override
+    public List<Film> findAllFilms() {
+        return fillGenresAndLikes(films.getAll());
+    }
+
+    @Override
+    public List<Film> findFilms(long afterId, int limit) {
+        return fillGenresAndLikes(films.getPage(afterId, limit));
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(Collection<Long> ids) {
+        return fillGenresAndLikes(films.getByIds(ids));
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer) {
+        List<Film> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        films.forEach(film -> {
+            chunk.add(film);
+            if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                fillGenresAndLikes(chunk).forEach(consumer);
+                chunk.clear();
+            }
+        });
+        fillGenresAndLikes(chunk).forEach(consumer);
+    }
+
+    @Override
+    public void deleteFilmById(long id) {
+        findFilmById(id);
+        database.deleteFilm(id);
+        versions.filmChanged(id);
+    }
+
+    @Override
+    public void deleteAllFilms() {
+        database.deleteAllFilms();
+        versions.allFilmsChanged();
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        // TopK пропускает нулевой счет, а фильмы без лайков тоже попадают в топ, поэтому счет сдвинут на единицу
+        TopK top = new TopK(count);
+        getLikeCounts().forEach((id, likes) -> top.offer(id, likes + 1L));
+        return findFilmsByIds(Arrays.stream(top.sortedIds()).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public Map<Long, Integer> getLikeCounts() {
+        Map<Long, Integer> likeCounts = new HashMap<>();
+        films.forEach(film -> likeCounts.put(film.getId(), likes.getLikers(film.getId()).length));
+        return likeCounts;
+    }
+
+    @Override
+    public Map<Long, Integer> getReleaseYears() {
+        Map<Long, Integer> releaseYears = new HashMap<>();
+        films.forEach(film -> {
+            if (film.getReleaseDate() != null) {
+                releaseYears.put(film.getId(), film.getReleaseDate().getYear());
+            }
+        });
+        return releaseYears;
+    }
+
+    // рейтинг из запроса содержит только id, название берется из справочника
+    // транзакций здесь нет: жанры пишутся после фильма, поэтому неизвестный жанр, как и рейтинг в toRow,
+    // отклоняется до записи, чтобы ошибка не оставила фильм без жанров
+    private void checkGenres(Film film) {
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> genreStorage.findGenreById(genre.getId()));
+        }
+    }
+
+    private Film toRow(Film film) {
+        return Film.builder().name(film.getName()).description(film.getDescription())
+                .releaseDate(film.getReleaseDate()).duration(film.getDuration())
+                .mpa(film.getMpa() == null ? null : ratingStorage.findRatingById(film.getMpa().getId())).build();
+    }
 
-}
\ No newline at end of file
+    private List<Film> fillGenresAndLikes(List<Film> rows) {
+        List<Film> result = new ArrayList<>(rows.size());
+        for (Film row : rows) {
+            Set<Genre> filmGenres = new TreeSet<>(Comparator.comparing(Genre::getId));
+            filmGenres.addAll(genres.getOrDefault(row.getId(), Set.of()));
+            Set<Long> filmLikes = Arrays.stream(likes.getLikers(row.getId())).boxed()
+                    .collect(Collectors.toCollection(HashSet::new));
+            Film film = Film.builder().name(row.getName()).description(row.getDescription())
+                    .releaseDate(row.getReleaseDate()).duration(row.getDuration()).mpa(row.getMpa())
+                    .genres(filmGenres).likes(filmLikes).build();
+            film.setId(row.getId());
+            result.add(film);
+        }
+        return result;
+    }
+}
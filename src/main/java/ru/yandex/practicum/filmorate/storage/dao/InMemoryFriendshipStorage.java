@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.RejectedFriendRequestException;
+import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Дружба в памяти: статусы заявок по пользователям и {@link FriendshipIndex} для списков друзей, оба лежат в
+ * {@link InMemoryDatabase}. Карта статусов пользователя после записи не меняется, изменения собирают новую.
+ */
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class InMemoryFriendshipStorage implements FriendshipStorage {
+    private final InMemoryDatabase database;
+    private final EntityVersions versions;
+    private final Map<Long, Map<Long, FriendStatus>> statuses;
+    private final FriendshipIndex index;
+
+    public InMemoryFriendshipStorage(InMemoryDatabase database, EntityVersions versions) {
+        this.database = database;
+        this.versions = versions;
+        this.statuses = database.friendStatuses();
+        this.index = database.friendships();
+    }
+
+    @Override
+    public void addFriend(long id, long friendId, FriendStatus friendStatus) {
+        if (!database.addFriend(id, friendId, friendStatus)) {
+            throw new RejectedFriendRequestException("Заявка в друзья пользователю " + friendId +
+                    " уже существует");
+        }
+        versions.userChanged(id);
+    }
+
+    @Override
+    public void deleteFriend(long id, long friendId) {
+        database.deleteFriendship(id, friendId);
+        versions.usersChanged(List.of(id, friendId));
+    }
+
+    @Override
+    public long[] getFriendIds(long userId) {
+        return index.getFriends(userId);
+    }
+
+    @Override
+    public long[] getCommonFriendIds(long userId, long otherId) {
+        return index.getCommonFriends(userId, otherId);
+    }
+
+    @Override
+    public long[] getFollowerIds(long userId) {
+        return index.getFollowers(userId);
+    }
+
+    @Override
+    public long[] getSuggestedFriendIds(long userId, int limit) {
+        return index.suggest(userId, limit);
+    }
+
+    // заявки удаляются вместе с пользователем в InMemoryDatabase, как каскадом в базе
+    @Override
+    public void onUserDeleted(long userId) {
+    }
+
+    @Override
+    public void onAllUsersDeleted() {
+    }
+
+    @Override
+    public Map<Long, FriendStatus> getFriendsStatuses(long userId) {
+        return new HashMap<>(statuses.getOrDefault(userId, Map.of()));
+    }
+
+    @Override
+    public Map<Long, Map<Long, FriendStatus>> getFriendsStatusesByUserIds(Collection<Long> userIds) {
+        Map<Long, Map<Long, FriendStatus>> statusesByUser = new HashMap<>();
+        for (long userId : userIds) {
+            Map<Long, FriendStatus> userStatuses = statuses.get(userId);
+            if (userStatuses != null) {
+                statusesByUser.put(userId, new HashMap<>(userStatuses));
+            }
+        }
+        return statusesByUser;
+    }
+}
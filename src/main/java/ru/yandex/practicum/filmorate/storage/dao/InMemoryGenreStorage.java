@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Жанры фильмов в памяти, сами наборы лежат в {@link InMemoryDatabase}. Набор жанров фильма после записи
+ * не меняется, изменение заменяет его целиком, поэтому чтение идет без блокировок.
+ */
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class InMemoryGenreStorage implements GenreStorage {
+    // тот же справочник, что заполняет миграция V1__init.sql
+    private static final List<Genre> GENRES = List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"),
+            new Genre(3, "Мультфильм"), new Genre(4, "Триллер"), new Genre(5, "Документальный"),
+            new Genre(6, "Боевик"));
+
+    private final InMemoryDatabase database;
+    private final Map<Long, Set<Genre>> genresByFilm;
+    private final EntityVersions versions;
+
+    public InMemoryGenreStorage(InMemoryDatabase database, EntityVersions versions) {
+        this.database = database;
+        this.genresByFilm = database.genres();
+        this.versions = versions;
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return GENRES;
+    }
+
+    @Override
+    public Genre findGenreById(int id) {
+        if (id < 1 || id > GENRES.size()) {
+            throw new IncorrectIdException("жанра с id " + id + " не существует!");
+        }
+        return GENRES.get(id - 1);
+    }
+
+    @Override
+    public Set<Genre> getGenres(long filmId) {
+        return new HashSet<>(genresByFilm.getOrDefault(filmId, Set.of()));
+    }
+
+    @Override
+    public Map<Long, Set<Genre>> getGenresByFilmIds(Collection<Long> filmIds) {
+        Map<Long, Set<Genre>> genres = new HashMap<>();
+        for (long filmId : filmIds) {
+            Set<Genre> filmGenres = genresByFilm.get(filmId);
+            if (filmGenres != null) {
+                genres.put(filmId, sorted(filmGenres));
+            }
+        }
+        return genres;
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getGenreIdsByFilm() {
+        Map<Long, Set<Integer>> genreIds = new HashMap<>();
+        genresByFilm.forEach((filmId, genres) -> genreIds.put(filmId,
+                genres.stream().map(Genre::getId).collect(Collectors.toCollection(HashSet::new))));
+        return genreIds;
+    }
+
+    @Override
+    public void createGenres(long filmId, Film film) {
+        putGenres(filmId, film.getGenres());
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    public void createGenres(List<Film> films) {
+        films.forEach(film -> putGenres(film.getId(), film.getGenres()));
+    }
+
+    @Override
+    public void updateGenres(long filmId, Set<Genre> genres) {
+        putGenres(filmId, genres);
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    public void deleteGenres(long filmId) {
+        database.putGenres(filmId, Set.of());
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    public void onAllFilmsDeleted() {
+        // жанры удаляются вместе с фильмами в InMemoryDatabase, как каскадом в базе
+    }
+
+    // жанры из запроса содержат только id, названия берутся из справочника
+    private void putGenres(long filmId, Set<Genre> genres) {
+        Set<Genre> resolved = genres == null ? Set.of() : genres.stream()
+                .map(genre -> findGenreById(genre.getId()))
+                .collect(Collectors.toCollection(() -> new TreeSet<>(Comparator.comparing(Genre::getId))));
+        database.putGenres(filmId, resolved);
+    }
+
+    private static Set<Genre> sorted(Set<Genre> genres) {
+        Set<Genre> copy = new TreeSet<>(Comparator.comparing(Genre::getId));
+        copy.addAll(genres);
+        return copy;
+    }
+}
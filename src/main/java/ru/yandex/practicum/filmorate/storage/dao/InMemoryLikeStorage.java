@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Лайки в памяти: {@link LikeIndex} из {@link InMemoryDatabase} и есть таблица лайков, число лайков фильма -
+ * длина списка лайкнувших. Лайк ставится, только если фильм и пользователь еще существуют.
+ */
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class InMemoryLikeStorage implements LikeStorage {
+    private final InMemoryDatabase database;
+    private final EntityVersions versions;
+    private final Storage<Film> films;
+    private final LikeIndex index;
+
+    public InMemoryLikeStorage(InMemoryDatabase database, EntityVersions versions) {
+        this.database = database;
+        this.versions = versions;
+        this.films = database.films();
+        this.index = database.likes();
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        if (films.find(filmId) == null) {
+            throw new IncorrectIdException("фильма с id " + filmId + " не существует!");
+        }
+        boolean added = database.addLike(filmId, userId);
+        if (added) {
+            versions.filmChanged(filmId);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean deleteLike(long filmId, long userId) {
+        boolean removed = database.removeLike(filmId, userId);
+        if (removed) {
+            versions.filmChanged(filmId);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<Long> getLikes(long filmId) {
+        return toSet(index.getLikers(filmId));
+    }
+
+    @Override
+    public Set<Long> getLikedFilmIds(long userId) {
+        return toSet(index.getLikedFilms(userId));
+    }
+
+    @Override
+    public Map<Long, Set<Long>> getLikesByFilmIds(Collection<Long> filmIds) {
+        Map<Long, Set<Long>> likesByFilm = new HashMap<>();
+        for (long filmId : filmIds) {
+            long[] likers = index.getLikers(filmId);
+            if (likers.length > 0) {
+                likesByFilm.put(filmId, toSet(likers));
+            }
+        }
+        return likesByFilm;
+    }
+
+    @Override
+    public void createLikes(long filmId, Film film) {
+        if (film.getLikes().isEmpty()) {
+            return;
+        }
+        film.getLikes().forEach(userId -> database.addLike(filmId, userId));
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    public Map<Long, Integer> applyLikes(List<long[]> likes, List<long[]> unlikes) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (long[] like : likes) {
+            if (database.addLike(like[0], like[1])) {
+                deltas.merge(like[0], 1, Integer::sum);
+            }
+        }
+        for (long[] unlike : unlikes) {
+            if (database.removeLike(unlike[0], unlike[1])) {
+                deltas.merge(unlike[0], -1, Integer::sum);
+            }
+        }
+        // лайк одного пользователя и отмена другого меняют карточку фильма, но не счетчик
+        versions.filmsChanged(List.copyOf(deltas.keySet()));
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
+    }
+
+    @Override
+    public long[] getRecommendedFilmIds(long userId, int limit) {
+        return index.recommend(userId, limit);
+    }
+
+    // лайки удаляются вместе с фильмом или пользователем в InMemoryDatabase, как каскадом в базе
+    @Override
+    public void onUserDeleted(long userId) {
+    }
+
+    @Override
+    public void onFilmDeleted(long filmId) {
+    }
+
+    @Override
+    public void onAllLikesDeleted() {
+    }
+
+    private static Set<Long> toSet(long[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toCollection(HashSet::new));
+    }
+}
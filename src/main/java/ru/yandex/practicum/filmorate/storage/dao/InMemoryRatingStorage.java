@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.util.List;
+
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class InMemoryRatingStorage implements RatingStorage {
+    // тот же справочник, что заполняет миграция V1__init.sql
+    private static final List<Rating> RATINGS = List.of(new Rating(1, "G"), new Rating(2, "PG"),
+            new Rating(3, "PG-13"), new Rating(4, "R"), new Rating(5, "NC-17"));
+
+    @Override
+    public List<Rating> getAllRatings() {
+        return RATINGS;
+    }
+
+    @Override
+    public Rating findRatingById(int ratingId) {
+        if (ratingId < 1 || ratingId > RATINGS.size()) {
+            throw new IncorrectIdException("рейтинга с id " + ratingId + " не существует!");
+        }
+        return RATINGS.get(ratingId - 1);
+    }
+}
@@ -1,10 +1,145 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Пользователи в памяти процесса, filmorate.storage.type=in-memory. Друзья хранятся в {@link InMemoryDatabase}
+ * отдельно и подставляются при чтении; наружу, как и у {@link InMemoryFilmStorage}, отдаются копии.
+ */
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
 @Component("inMemoryUserStorage")
-public class InMemoryUserStorage extends Storage<User> {
+public class InMemoryUserStorage implements UserStorage {
+    private final InMemoryDatabase database;
+    private final Storage<User> users;
+    private final Map<Long, Map<Long, FriendStatus>> friendStatuses;
+    private final FriendshipIndex friendships;
+    private final EntityVersions versions;
 
-}
+    public InMemoryUserStorage(InMemoryDatabase database, EntityVersions versions) {
+        this.database = database;
+        this.users = database.users();
+        this.friendStatuses = database.friendStatuses();
+        this.friendships = database.friendships();
+        this.versions = versions;
+    }
+
+    @Override
+    public User findUserById(long id) {
+        User user = users.find(id);
+        if (user == null) {
+            throw new IncorrectIdException("пользователя с id " + id + " не существует!");
+        }
+        return fillFriendsStatuses(List.of(user)).get(0);
+    }
+
+    @Override
+    public User createUser(User user) {
+        user.setId(database.insertUser(toRow(user)).getId());
+        versions.userChanged(user.getId());
+        return user;
+    }
+
+    @Override
+    public List<User> createUsers(List<User> users) {
+        List<User> rows = database.insertUsers(users.stream().map(InMemoryUserStorage::toRow)
+                .collect(Collectors.toList()));
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(rows.get(i).getId());
+        }
+        versions.usersChanged(rows.stream().map(User::getId).collect(Collectors.toList()));
+        return users;
+    }
+
+    @Override
+    public User updateUser(User updateUser) {
+        findUserById(updateUser.getId());
+        User row = toRow(updateUser);
+        row.setId(updateUser.getId());
+        database.updateUser(row);
+        versions.userChanged(updateUser.getId());
+        return findUserById(updateUser.getId());
+    }
+
+    @Override
+    public List<User> findAllUsers() {
+        return fillFriendsStatuses(users.getAll());
+    }
+
+    @Override
+    public List<User> findUsers(long afterId, int limit) {
+        return fillFriendsStatuses(users.getPage(afterId, limit));
+    }
+
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        return fillFriendsStatuses(users.getByIds(ids));
+    }
 
+    @Override
+    public Set<Long> deleteUserById(long id) {
+        findUserById(id);
+        // вместе с пользователем удаляются его лайки и строки дружбы у других пользователей
+        Set<Long> likedFilmIds = Arrays.stream(database.likes().getLikedFilms(id)).boxed().collect(Collectors.toSet());
+        long[] followerIds = friendships.getFollowers(id);
+        database.deleteUser(id);
+        versions.userChanged(id);
+        versions.usersChanged(Arrays.stream(followerIds).boxed().collect(Collectors.toList()));
+        versions.filmsChanged(likedFilmIds);
+        return likedFilmIds;
+    }
+
+    @Override
+    public void deleteAllUsers() {
+        database.deleteAllUsers();
+        versions.allUsersChanged();
+        versions.allFilmsChanged();
+    }
+
+    @Override
+    public List<User> getFriendsList(long id) {
+        return findUsersByIds(toList(friendships.getFriends(id)));
+    }
+
+    @Override
+    public List<User> getCommonFriends(long id, long otherId) {
+        return findUsersByIds(toList(friendships.getCommonFriends(id, otherId)));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(long id, int limit) {
+        return findUsersByIds(toList(friendships.suggest(id, limit)));
+    }
+
+    private static List<Long> toList(long[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toList());
+    }
+
+    private static User toRow(User user) {
+        return User.builder().email(user.getEmail()).login(user.getLogin()).name(user.getName())
+                .birthday(user.getBirthday()).build();
+    }
+
+    private List<User> fillFriendsStatuses(List<User> rows) {
+        List<User> users = new ArrayList<>(rows.size());
+        for (User row : rows) {
+            User user = toRow(row);
+            user.setId(row.getId());
+            user.setFriendsStatuses(new HashMap<>(friendStatuses.getOrDefault(row.getId(), Map.of())));
+            users.add(user);
+        }
+        return users;
+    }
+}
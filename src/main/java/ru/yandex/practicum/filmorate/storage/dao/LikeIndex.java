@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Лайки в памяти: для каждого пользователя отсортированный массив id понравившихся фильмов и для каждого фильма
+ * массив id лайкнувших его пользователей. Как и в {@link FriendshipIndex}, массивы не меняются после публикации.
+ */
+final class LikeIndex {
+    private static final long[] EMPTY = new long[0];
+    // число самых похожих пользователей, из лайков которых собираются рекомендации
+    private static final int NEIGHBOURS = 50;
+
+    private volatile long maxUserId;
+
+    private final Map<Long, long[]> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> usersByFilm = new ConcurrentHashMap<>();
+
+    long[] getLikedFilms(long userId) {
+        return filmsByUser.getOrDefault(userId, EMPTY);
+    }
+
+    long[] getLikers(long filmId) {
+        return usersByFilm.getOrDefault(filmId, EMPTY);
+    }
+
+    void forEachUser(BiConsumer<Long, long[]> consumer) {
+        filmsByUser.forEach(consumer);
+    }
+
+    /**
+     * Рекомендации для userId: соседи - пользователи с наибольшим числом общих лайков, их фильмы, которых нет
+     * у userId, ранжируются по сумме сходства лайкнувших соседей; при равенстве выше фильм с меньшим id.
+     * Сходство считается проходом по спискам лайкнувших каждый фильм userId, так что затрагиваются только
+     * пользователи хотя бы с одним общим лайком.
+     */
+    long[] recommend(long userId, int limit) {
+        long[] liked = getLikedFilms(userId);
+        if (liked.length == 0) {
+            return EMPTY;
+        }
+        long[][] likers = new long[liked.length][];
+        int paths = 0;
+        for (int i = 0; i < liked.length; i++) {
+            likers[i] = usersByFilm.getOrDefault(liked[i], EMPTY);
+            paths += likers[i].length;
+        }
+        // maxUserId растет раньше публикации массивов и никогда не уменьшается, поэтому все прочитанные выше id
+        // в него укладываются
+        IdCounter overlap = IdCounter.create(maxUserId, paths);
+        overlap.exclude(userId);
+        for (long[] filmLikers : likers) {
+            for (long liker : filmLikers) {
+                overlap.increment(liker);
+            }
+        }
+        TopK neighbours = new TopK(NEIGHBOURS);
+        for (int i = 0; i < overlap.slots(); i++) {
+            neighbours.offer(overlap.candidate(i), overlap.count(i));
+        }
+        Map<Long, long[]> scores = new HashMap<>();
+        for (long[] neighbour : neighbours.sorted()) {
+            for (long filmId : getLikedFilms(neighbour[0])) {
+                if (Arrays.binarySearch(liked, filmId) < 0) {
+                    scores.computeIfAbsent(filmId, id -> new long[]{id, 0})[1] += neighbour[1];
+                }
+            }
+        }
+        TopK films = new TopK(limit);
+        scores.values().forEach(entry -> films.offer(entry[0], entry[1]));
+        return films.sortedIds();
+    }
+
+    // false, если лайк уже был
+    synchronized boolean add(long filmId, long userId) {
+        long[] liked = getLikedFilms(userId);
+        long[] updated = SortedIds.insert(liked, filmId);
+        if (updated == liked) {
+            return false;
+        }
+        maxUserId = Math.max(maxUserId, userId);
+        filmsByUser.put(userId, updated);
+        usersByFilm.put(filmId, SortedIds.insert(getLikers(filmId), userId));
+        return true;
+    }
+
+    // false, если лайка не было
+    synchronized boolean remove(long filmId, long userId) {
+        long[] liked = getLikedFilms(userId);
+        long[] updated = SortedIds.delete(liked, filmId);
+        if (updated == liked) {
+            return false;
+        }
+        SortedIds.putOrRemove(filmsByUser, userId, updated);
+        SortedIds.putOrRemove(usersByFilm, filmId, SortedIds.delete(getLikers(filmId), userId));
+        return true;
+    }
+
+    synchronized void removeUser(long userId) {
+        for (long filmId : getLikedFilms(userId)) {
+            SortedIds.putOrRemove(usersByFilm, filmId,
+                    SortedIds.delete(usersByFilm.getOrDefault(filmId, EMPTY), userId));
+        }
+        filmsByUser.remove(userId);
+    }
+
+    synchronized void removeFilm(long filmId) {
+        for (long userId : usersByFilm.getOrDefault(filmId, EMPTY)) {
+            SortedIds.putOrRemove(filmsByUser, userId, SortedIds.delete(getLikedFilms(userId), filmId));
+        }
+        usersByFilm.remove(filmId);
+    }
+
+    /**
+     * Заменяет содержимое индекса; массивы в newFilmsByUser должны быть отсортированы.
+     */
+    synchronized void replaceAll(Map<Long, long[]> newFilmsByUser) {
+        long newMaxUserId = newFilmsByUser.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+        maxUserId = Math.max(maxUserId, newMaxUserId);
+        Map<Long, List<Long>> newUsersByFilm = new HashMap<>();
+        newFilmsByUser.keySet().stream().sorted().forEach(userId -> {
+            for (long filmId : newFilmsByUser.get(userId)) {
+                newUsersByFilm.computeIfAbsent(filmId, id -> new ArrayList<>()).add(userId);
+            }
+        });
+        filmsByUser.clear();
+        usersByFilm.clear();
+        filmsByUser.putAll(newFilmsByUser);
+        newUsersByFilm.forEach((filmId, userIds) -> usersByFilm.put(filmId,
+                userIds.stream().mapToLong(Long::longValue).toArray()));
+    }
+
+    synchronized void clear() {
+        filmsByUser.clear();
+        usersByFilm.clear();
+    }
+}
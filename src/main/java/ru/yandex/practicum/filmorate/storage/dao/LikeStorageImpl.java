@@ -0,0 +1,210 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
+@Component
+public class LikeStorageImpl implements LikeStorage {
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final EntityVersions versions;
+    private final LikeIndex index = new LikeIndex();
+
+    public LikeStorageImpl(JdbcTemplate jdbcTemplate, EntityVersions versions,
+                           @Value("${filmorate.jdbc.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void rebuildIndex() {
+        Map<Long, List<Long>> filmsByUser = new HashMap<>();
+        jdbcTemplate.query("select user_id, film_id from likes order by user_id, film_id", (ResultSet rs) -> {
+            filmsByUser.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>()).add(rs.getLong("film_id"));
+        });
+        Map<Long, long[]> likes = new HashMap<>();
+        filmsByUser.forEach((userId, ids) -> likes.put(userId, ids.stream().mapToLong(Long::longValue).toArray()));
+        index.replaceAll(likes);
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(long filmId, long userId) {
+        try {
+            String sql = "insert into likes(film_id, user_id) select ?, ? " +
+                    "where not exists (select 1 from likes where film_id = ? and user_id = ?)";
+            boolean added = jdbcTemplate.update(sql, filmId, userId, filmId, userId) > 0;
+            if (added) {
+                changeLikeCount(filmId, 1);
+                AfterCommit.run(() -> index.add(filmId, userId));
+                versions.filmChanged(filmId);
+            }
+            return added;
+        } catch (DuplicateKeyException exp) {
+            return false;
+        } catch (DataIntegrityViolationException exp) {
+            throw new IncorrectIdException("фильма с id " + filmId + " не существует!");
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteLike(long filmId, long userId) {
+        int deleted = jdbcTemplate.update("delete from likes where film_id = ? and user_id = ?", filmId, userId);
+        if (deleted > 0) {
+            changeLikeCount(filmId, -deleted);
+            AfterCommit.run(() -> index.remove(filmId, userId));
+            versions.filmChanged(filmId);
+        }
+        return deleted > 0;
+    }
+
+    @Override
+    public Set<Long> getLikes(long filmId) {
+        SqlRowSet likesRows = jdbcTemplate.queryForRowSet("select user_id from likes where film_id = ?", filmId);
+        Set<Long> likes = new HashSet<>();
+        while (likesRows.next()) {
+            likes.add((long) likesRows.getInt("user_id"));
+        }
+        return likes;
+    }
+
+    @Override
+    public Set<Long> getLikedFilmIds(long userId) {
+        SqlRowSet likesRows = jdbcTemplate.queryForRowSet("select film_id from likes where user_id = ?", userId);
+        Set<Long> filmIds = new HashSet<>();
+        while (likesRows.next()) {
+            filmIds.add((long) likesRows.getInt("film_id"));
+        }
+        return filmIds;
+    }
+
+    @Override
+    public Map<Long, Set<Long>> getLikesByFilmIds(Collection<Long> filmIds) {
+        Map<Long, Set<Long>> likesByFilm = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return likesByFilm;
+        }
+        jdbcTemplate.query("select film_id, user_id from likes where film_id = any(?)",
+                SqlArrays.idsArray(filmIds), (ResultSet rs) -> {
+                    likesByFilm.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>())
+                            .add(rs.getLong("user_id"));
+                });
+        return likesByFilm;
+    }
+
+    @Override
+    @Transactional
+    public void createLikes(long filmId, Film film) {
+        if (film.getLikes().isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into likes(film_id, user_id) values (?, ?)", film.getLikes(), batchSize,
+                (ps, userId) -> {
+                    ps.setLong(1, filmId);
+                    ps.setLong(2, userId);
+                });
+        changeLikeCount(filmId, film.getLikes().size());
+        Set<Long> userIds = Set.copyOf(film.getLikes());
+        AfterCommit.run(() -> userIds.forEach(userId -> index.add(filmId, userId)));
+        versions.filmChanged(filmId);
+    }
+
+    // пары пишутся insert ... select, поэтому лайк удаленному фильму или от удаленного пользователя не вставится
+    @Override
+    @Transactional
+    public Map<Long, Integer> applyLikes(List<long[]> likes, List<long[]> unlikes) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        List<long[]> added = new ArrayList<>();
+        List<long[]> removed = new ArrayList<>();
+        int[][] insertCounts = jdbcTemplate.batchUpdate("insert into likes(film_id, user_id) " +
+                        "select f.film_id, u.user_id from films f join users u on u.user_id = ? where f.film_id = ? " +
+                        "and not exists (select 1 from likes l where l.film_id = f.film_id and l.user_id = u.user_id)",
+                likes, batchSize, (ps, like) -> {
+                    ps.setLong(1, like[1]);
+                    ps.setLong(2, like[0]);
+                });
+        collectApplied(likes, insertCounts, added, deltas, 1);
+        int[][] deleteCounts = jdbcTemplate.batchUpdate("delete from likes where film_id = ? and user_id = ?",
+                unlikes, batchSize, (ps, unlike) -> {
+                    ps.setLong(1, unlike[0]);
+                    ps.setLong(2, unlike[1]);
+                });
+        collectApplied(unlikes, deleteCounts, removed, deltas, -1);
+        // лайк одного пользователя и отмена другого меняют карточку фильма, но не счетчик
+        List<Long> changedFilmIds = List.copyOf(deltas.keySet());
+        deltas.values().removeIf(delta -> delta == 0);
+        jdbcTemplate.batchUpdate("update films set like_count = like_count + ? where film_id = ?",
+                List.copyOf(deltas.entrySet()), batchSize, (ps, delta) -> {
+                    ps.setInt(1, delta.getValue());
+                    ps.setLong(2, delta.getKey());
+                });
+        AfterCommit.run(() -> {
+            added.forEach(like -> index.add(like[0], like[1]));
+            removed.forEach(unlike -> index.remove(unlike[0], unlike[1]));
+        });
+        versions.filmsChanged(changedFilmIds);
+        return deltas;
+    }
+
+    // лайки строятся по индексу в памяти, таблица likes при запросе рекомендаций не читается
+    @Override
+    public long[] getRecommendedFilmIds(long userId, int limit) {
+        return index.recommend(userId, limit);
+    }
+
+    // лайки удаляются каскадно вместе с пользователями и фильмами, индекс нужно поправить отдельно
+    @Override
+    public void onUserDeleted(long userId) {
+        AfterCommit.run(() -> index.removeUser(userId));
+    }
+
+    @Override
+    public void onFilmDeleted(long filmId) {
+        AfterCommit.run(() -> index.removeFilm(filmId));
+    }
+
+    @Override
+    public void onAllLikesDeleted() {
+        AfterCommit.run(index::clear);
+    }
+
+    // счетчики batchUpdate идут по пачкам в том же порядке, что и пары
+    private static void collectApplied(List<long[]> pairs, int[][] counts, List<long[]> applied,
+                                       Map<Long, Integer> deltas, int sign) {
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                long[] pair = pairs.get(i++);
+                if (count > 0) {
+                    applied.add(pair);
+                    deltas.merge(pair[0], sign, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private void changeLikeCount(long filmId, int delta) {
+        jdbcTemplate.update("update films set like_count = like_count + ? where film_id = ?", delta, filmId);
+    }
+}
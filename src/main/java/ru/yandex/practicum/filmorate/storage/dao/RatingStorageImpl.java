@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+@Slf4j
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
+@Component
+public class RatingStorageImpl implements RatingStorage {
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Rating[] ratingsById = new Rating[0];
+
+    public RatingStorageImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public synchronized void refresh() {
+        List<Rating> ratings = jdbcTemplate.query("select * from rating", (rs, rowNum) -> makeRating(rs));
+        int maxId = ratings.stream().mapToInt(Rating::getId).max().orElse(0);
+        Rating[] loaded = new Rating[maxId + 1];
+        ratings.forEach(rating -> loaded[rating.getId()] = rating);
+        ratingsById = loaded;
+        log.info("справочник рейтингов загружен: {}", ratings.size());
+    }
+
+    @Override
+    public List<Rating> getAllRatings() {
+        return Arrays.stream(ratingsById)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Rating findRatingById(int ratingId) {
+        Rating rating = lookup(ratingId);
+        if (rating == null) {
+            throw new IncorrectIdException("рейтинга с id " + ratingId + " не существует!");
+        }
+        return rating;
+    }
+
+    private Rating lookup(int ratingId) {
+        Rating[] ratings = ratingsById;
+        return ratingId > 0 && ratingId < ratings.length ? ratings[ratingId] : null;
+    }
+
+    private Rating makeRating(ResultSet rs) throws SQLException {
+        int id = rs.getInt("rating_id");
+        String ratingName = rs.getString("rating");
+        return new Rating(id, ratingName);
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * Буфер, в который кодируются записи журнала и снимка. Формат записи: длина тела (int), crc32 тела (int),
+ * тело - номер {@link RecordType} (byte) и поля. Строка - длина в байтах UTF-8 и байты, -1 для null;
+ * дата - номер дня от эпохи, Long.MIN_VALUE для null.
+ */
+final class RecordBuffer {
+    static final int HEADER_SIZE = 8;
+    // запись больше этого считается испорченной
+    static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private ByteBuffer buffer;
+    private int recordStart;
+    private long records;
+
+    RecordBuffer(int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    RecordBuffer begin(RecordType type) {
+        ensure(HEADER_SIZE + 1);
+        recordStart = buffer.position();
+        buffer.position(recordStart + HEADER_SIZE);
+        buffer.put((byte) type.ordinal());
+        return this;
+    }
+
+    RecordBuffer putLong(long value) {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+        return this;
+    }
+
+    RecordBuffer putInt(int value) {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    RecordBuffer putString(String value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    RecordBuffer putDate(LocalDate value) {
+        return putLong(value == null ? Long.MIN_VALUE : value.toEpochDay());
+    }
+
+    void end() {
+        int length = buffer.position() - recordStart - HEADER_SIZE;
+        if (length > MAX_RECORD_SIZE) {
+            buffer.position(recordStart);
+            throw new IllegalArgumentException("запись журнала слишком велика: " + length + " байт");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), recordStart + HEADER_SIZE, length);
+        buffer.putInt(recordStart, length);
+        buffer.putInt(recordStart + Integer.BYTES, (int) crc.getValue());
+        records++;
+    }
+
+    long records() {
+        return records;
+    }
+
+    int size() {
+        return buffer.position();
+    }
+
+    // содержимое для записи в файл; сам буфер не меняется
+    ByteBuffer content() {
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        return content;
+    }
+
+    void clear() {
+        buffer.clear();
+        records = 0;
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * Чтение записей {@link RecordBuffer} из файла журнала или снимка. Файл отображается в память окнами, так что
+ * размер файла не ограничен размером одного отображения. Чтение останавливается на конце файла или на первой
+ * недописанной либо испорченной записи: {@link #atEnd()} их различает, {@link #position()} - граница последней
+ * целой записи.
+ */
+final class RecordReader implements Closeable {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private RecordType type;
+    private ByteBuffer body;
+
+    RecordReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    boolean next() throws IOException {
+        if (size - position < RecordBuffer.HEADER_SIZE) {
+            return false;
+        }
+        map(RecordBuffer.HEADER_SIZE);
+        int offset = (int) (position - windowStart);
+        int length = window.getInt(offset);
+        int crc = window.getInt(offset + Integer.BYTES);
+        if (length <= 0 || length > RecordBuffer.MAX_RECORD_SIZE
+                || size - position - RecordBuffer.HEADER_SIZE < length) {
+            return false;
+        }
+        map(RecordBuffer.HEADER_SIZE + length);
+        offset = (int) (position - windowStart);
+        ByteBuffer record = window.duplicate();
+        record.limit(offset + RecordBuffer.HEADER_SIZE + length).position(offset + RecordBuffer.HEADER_SIZE);
+        record = record.slice();
+        CRC32 actual = new CRC32();
+        actual.update(record.duplicate());
+        RecordType recordType = RecordType.of(record.get());
+        if ((int) actual.getValue() != crc || recordType == null) {
+            return false;
+        }
+        type = recordType;
+        body = record;
+        position += RecordBuffer.HEADER_SIZE + length;
+        return true;
+    }
+
+    RecordType type() {
+        return type;
+    }
+
+    long position() {
+        return position;
+    }
+
+    boolean atEnd() {
+        return position == size;
+    }
+
+    long getLong() {
+        return body.getLong();
+    }
+
+    int getInt() {
+        return body.getInt();
+    }
+
+    String getString() {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    LocalDate getDate() {
+        long day = body.getLong();
+        return day == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // окно сдвигается к текущей записи, если она в него не помещается
+    private void map(int bytes) throws IOException {
+        if (window != null && position >= windowStart && position + bytes <= windowStart + window.capacity()) {
+            return;
+        }
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+/**
+ * Типы записей журнала и снимка {@link InMemoryDatabase}. В файл пишется номер типа, поэтому новые типы
+ * добавляются только в конец. Каждая запись задает итоговое состояние ключа, а не приращение: повторное
+ * применение ничего не меняет, и журнал можно накатывать на снимок, снятый без остановки записи.
+ */
+enum RecordType {
+    SEQUENCES,
+    FILM_PUT,
+    FILM_DELETE,
+    FILMS_CLEAR,
+    USER_PUT,
+    USER_DELETE,
+    USERS_CLEAR,
+    GENRES_PUT,
+    LIKE_ADD,
+    LIKE_REMOVE,
+    FRIEND_ADD,
+    FRIENDSHIP_DELETE;
+
+    private static final RecordType[] VALUES = values();
+
+    static RecordType of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
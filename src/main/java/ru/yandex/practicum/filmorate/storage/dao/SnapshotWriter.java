@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Запись снимка через отображение файла в память. Записи копятся в {@link RecordBuffer} и переносятся в
+ * отображенное окно; когда окно заполнено, оно сбрасывается на диск и отображается следующее. При закрытии
+ * файл обрезается по последней записи и сбрасывается на диск.
+ */
+final class SnapshotWriter implements Closeable {
+    private static final long WINDOW_SIZE = 16L << 20;
+    private static final int BUFFER_SIZE = 256 << 10;
+
+    private final FileChannel channel;
+    private final RecordBuffer buffer = new RecordBuffer(BUFFER_SIZE);
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long records;
+
+    SnapshotWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    void write(Consumer<RecordBuffer> record) {
+        record.accept(buffer);
+        if (buffer.size() >= BUFFER_SIZE) {
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    long records() {
+        return records + buffer.records();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+            long size = windowStart;
+            if (window != null) {
+                size += window.position();
+                window.force();
+                window = null;
+            }
+            channel.truncate(size);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        ByteBuffer content = buffer.content();
+        while (content.hasRemaining()) {
+            if (window == null || !window.hasRemaining()) {
+                remap();
+            }
+            int chunk = Math.min(content.remaining(), window.remaining());
+            ByteBuffer part = content.duplicate();
+            part.limit(part.position() + chunk);
+            window.put(part);
+            content.position(content.position() + chunk);
+        }
+        records += buffer.records();
+        buffer.clear();
+    }
+
+    private void remap() throws IOException {
+        if (window != null) {
+            window.force();
+            windowStart += window.capacity();
+        }
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, WINDOW_SIZE);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// операции над отсортированными массивами id, из которых собраны индексы в памяти; исходный массив не меняется
+final class SortedIds {
+    private SortedIds() {
+    }
+
+    static long[] intersect(long[] first, long[] second) {
+        if (first.length > second.length) {
+            return intersect(second, first);
+        }
+        long[] result = new long[first.length];
+        int size = 0;
+        if ((long) first.length * 32 < second.length) {
+            // массивы сильно различаются по размеру: быстрее искать элементы меньшего в большем
+            for (long id : first) {
+                if (Arrays.binarySearch(second, id) >= 0) {
+                    result[size++] = id;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    result[size++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    static long[] insert(long[] ids, long id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+        return result;
+    }
+
+    static long[] delete(long[] ids, long id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        System.arraycopy(ids, position + 1, result, position, ids.length - position - 1);
+        return result;
+    }
+
+    static void putOrRemove(Map<Long, long[]> index, long id, long[] ids) {
+        if (ids.length == 0) {
+            index.remove(id);
+        } else {
+            index.put(id, ids);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.util.Collection;
+
+final class SqlArrays {
+    private SqlArrays() {
+    }
+
+    // весь набор id уходит одним параметром-массивом: "where id = any(?)" вместо запроса на каждую строку
+    static PreparedStatementSetter idsArray(Collection<Long> ids) {
+        return ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray()));
+    }
+}
@@ -3,48 +3,227 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.AbstractModel;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
-public abstract class Storage<T extends AbstractModel> {
-    private long currentId = 0;
-    private final Map<Long, T> dateMap = new HashMap<>();
+/**
+ * Хранилище в памяти для сущностей с последовательными id. Объект лежит в ячейке таблицы с номером, равным его id:
+ * таблица - каталог блоков по BLOCK_SIZE ячеек, блоки создаются по мере роста id. Ключи не упаковываются в Long,
+ * чтение и запись ячейки атомарны и идут без блокировок, блокировка берется только при росте каталога.
+ * Обход идет по возрастанию id прямо по блокам, без копирования: как и итератор ConcurrentHashMap, он не бросает
+ * исключений при параллельных изменениях и видит каждую ячейку в состоянии на момент прохода.
+ */
+public class Storage<T extends AbstractModel> {
+    private static final int BLOCK_BITS = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    // номер блока должен помещаться в int
+    private static final long MAX_ID = ((long) Integer.MAX_VALUE << BLOCK_BITS) | BLOCK_MASK;
+
+    private final AtomicLong currentId = new AtomicLong();
+    private final AtomicLong size = new AtomicLong();
+    private volatile AtomicReferenceArray<AtomicReferenceArray<T>> blocks = new AtomicReferenceArray<>(0);
 
     public T create(T t) {
-        t.setId(++currentId);
-        dateMap.put(t.getId(), t);
+        t.setId(currentId.incrementAndGet());
+        put(t);
         return t;
     }
 
+    // id выдаются одним диапазоном и идут подряд, как у пакетной вставки в базу
+    public List<T> createAll(List<T> items) {
+        long firstId = currentId.getAndAdd(items.size()) + 1;
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            item.setId(firstId + i);
+            put(item);
+        }
+        return items;
+    }
+
+    // запись с уже выданным id, например при восстановлении из журнала; следующий id будет больше
+    public void restore(T t) {
+        advanceId(t.getId());
+        put(t);
+    }
+
+    public long getLastId() {
+        return currentId.get();
+    }
+
+    public void advanceId(long id) {
+        currentId.accumulateAndGet(id, Math::max);
+    }
+
     public T update(T t) {
-        if (!dateMap.containsKey(t.getId())) {
-            throw new IncorrectIdException("Объекта с таким id не существует: " + t.getId());
+        AtomicReferenceArray<T> block = block(t.getId(), false);
+        int slot = slot(t.getId());
+        while (true) {
+            T current = block == null ? null : block.get(slot);
+            if (current == null) {
+                throw new IncorrectIdException("Объекта с таким id не существует: " + t.getId());
+            }
+            if (block.compareAndSet(slot, current, t)) {
+                return t;
+            }
         }
-        dateMap.put(t.getId(), t);
-        return t;
     }
 
     public void deleteById(long id) {
-        if (!dateMap.containsKey(id)) {
+        if (!remove(id)) {
             throw new IncorrectIdException("Такого id нет: " + id);
         }
-        dateMap.remove(id);
     }
 
-    public void deleteAll() {
-        dateMap.clear();
+    public boolean remove(long id) {
+        AtomicReferenceArray<T> block = block(id, false);
+        if (block == null || block.getAndSet(slot(id), null) == null) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
     }
 
-    public Collection<T> getAll() {
-        return List.copyOf(dateMap.values());
+    public synchronized void deleteAll() {
+        blocks = new AtomicReferenceArray<>(0);
+        size.set(0);
+    }
+
+    public List<T> getAll() {
+        List<T> all = new ArrayList<>((int) Math.max(size.get(), 0));
+        forEach(all::add);
+        return all;
+    }
+
+    public List<T> getPage(long afterId, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit, BLOCK_SIZE));
+        if (afterId >= currentId.get()) {
+            return page;
+        }
+        AtomicReferenceArray<AtomicReferenceArray<T>> directory = blocks;
+        long id = Math.max(afterId + 1, 1);
+        for (int b = blockIndex(id); b < directory.length() && page.size() < limit; b++) {
+            AtomicReferenceArray<T> block = directory.get(b);
+            if (block == null) {
+                continue;
+            }
+            for (int s = b == blockIndex(id) ? slot(id) : 0; s < BLOCK_SIZE && page.size() < limit; s++) {
+                T item = block.get(s);
+                if (item != null) {
+                    page.add(item);
+                }
+            }
+        }
+        return page;
     }
 
     public T getById(long id) {
-        if (!dateMap.containsKey(id)) {
+        T item = find(id);
+        if (item == null) {
             throw new IncorrectIdException("Такого id нет: " + id);
         }
-        return dateMap.get(id);
+        return item;
+    }
+
+    public T find(long id) {
+        AtomicReferenceArray<T> block = block(id, false);
+        return block == null ? null : block.get(slot(id));
+    }
+
+    // порядок как у ids, отсутствующие id пропускаются
+    public List<T> getByIds(Collection<Long> ids) {
+        List<T> items = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            T item = find(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    public void forEach(Consumer<T> consumer) {
+        AtomicReferenceArray<AtomicReferenceArray<T>> directory = blocks;
+        for (int b = 0; b < directory.length(); b++) {
+            AtomicReferenceArray<T> block = directory.get(b);
+            if (block == null) {
+                continue;
+            }
+            for (int s = 0; s < BLOCK_SIZE; s++) {
+                T item = block.get(s);
+                if (item != null) {
+                    consumer.accept(item);
+                }
+            }
+        }
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    private void put(T t) {
+        if (block(t.getId(), true).getAndSet(slot(t.getId()), t) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    private AtomicReferenceArray<T> block(long id, boolean create) {
+        // id больше последнего выданного еще нет; без этой проверки огромный id после приведения к int попал бы
+        // в чужой блок или в отрицательный номер
+        if (id <= 0 || id > currentId.get()) {
+            return null;
+        }
+        if (id > MAX_ID) {
+            throw new IllegalStateException("id вне диапазона хранилища в памяти: " + id);
+        }
+        int index = blockIndex(id);
+        AtomicReferenceArray<AtomicReferenceArray<T>> directory = blocks;
+        if (index >= directory.length()) {
+            if (!create) {
+                return null;
+            }
+            directory = grow(index);
+        }
+        AtomicReferenceArray<T> block = directory.get(index);
+        if (block == null && create) {
+            directory.compareAndSet(index, null, new AtomicReferenceArray<>(BLOCK_SIZE));
+            block = directory.get(index);
+        }
+        return block;
+    }
+
+    // блоки переносятся в новый каталог по ссылке, поэтому запись в старый каталог видна и через новый
+    private synchronized AtomicReferenceArray<AtomicReferenceArray<T>> grow(int index) {
+        AtomicReferenceArray<AtomicReferenceArray<T>> directory = blocks;
+        if (index < directory.length()) {
+            return directory;
+        }
+        int length = Math.max(index + 1, directory.length() * 2);
+        AtomicReferenceArray<AtomicReferenceArray<T>> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < directory.length(); i++) {
+            AtomicReferenceArray<T> block = directory.get(i);
+            if (block == null) {
+                block = new AtomicReferenceArray<>(BLOCK_SIZE);
+                if (!directory.compareAndSet(i, null, block)) {
+                    block = directory.get(i);
+                }
+            }
+            grown.set(i, block);
+        }
+        blocks = grown;
+        return grown;
+    }
+
+    private static int blockIndex(long id) {
+        return (int) (id >>> BLOCK_BITS);
+    }
+
+    private static int slot(long id) {
+        return (int) (id & BLOCK_MASK);
     }
 }
@@ -0,0 +1,407 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Журнал изменений {@link InMemoryDatabase}, включается filmorate.storage.journal.enabled. Записи добавляются
+ * в буфер в памяти, а отдельный поток пишет накопленное в файл одним вызовом и, в зависимости от
+ * filmorate.storage.journal.fsync, сбрасывает на диск: always - после каждого пакета, и изменение возвращается
+ * только после сброса; interval - не чаще раза в fsync-interval-ms, при падении ОС теряется не больше этого
+ * интервала; never - когда решит ОС. Журнал разбит на сегменты journal-N.log, новый сегмент начинается перед
+ * каждым снимком snapshot-N.bin, и при старте накатываются последний снимок и сегменты начиная с N.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "in-memory")
+@Component
+public class StorageJournal {
+    public enum FsyncPolicy {
+        ALWAYS,
+        INTERVAL,
+        NEVER
+    }
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final long IDLE_WAIT_MILLIS = 1_000;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    // запись в файл и смена сегмента идут по очереди, чтобы пакеты не поменялись местами
+    private final Object io = new Object();
+    private RecordBuffer pending = new RecordBuffer(BUFFER_SIZE);
+    private RecordBuffer writing = new RecordBuffer(BUFFER_SIZE);
+    private long appendedSeq;
+    private long writtenSeq;
+    private long recordsSinceRotation;
+    private IOException failure;
+    private FileChannel segment;
+    private long segmentIndex;
+    private boolean unsynced;
+    private long lastSyncMillis;
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public StorageJournal(@Value("${filmorate.storage.journal.enabled:false}") boolean enabled,
+                          @Value("${filmorate.storage.journal.dir:./data}") String dir,
+                          @Value("${filmorate.storage.journal.fsync:interval}") FsyncPolicy fsync,
+                          @Value("${filmorate.storage.journal.fsync-interval-ms:100}") long fsyncIntervalMillis) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.fsync = fsync;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Накатывает последний снимок и журнал после него и открывает новый сегмент для записи. Недописанная запись
+     * в конце последнего сегмента - след падения во время записи, сегмент обрезается по ней; испорченный файл
+     * в середине журнала останавливает запуск.
+     */
+    long recover(Consumer<RecordReader> apply) throws IOException {
+        Files.createDirectories(dir);
+        for (Path temp : list(TEMP_SUFFIX)) {
+            Files.delete(temp);
+        }
+        List<Long> snapshots = indexes(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long from = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        long records = 0;
+        if (from > 0) {
+            records += replay(path(SNAPSHOT_PREFIX, from, SNAPSHOT_SUFFIX), apply, false);
+        }
+        List<Long> segments = new ArrayList<>();
+        for (long index : indexes(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (index >= from) {
+                segments.add(index);
+            }
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            records += replay(path(SEGMENT_PREFIX, segments.get(i), SEGMENT_SUFFIX), apply, i == segments.size() - 1);
+        }
+        long next = segments.isEmpty() ? Math.max(from, 1) : segments.get(segments.size() - 1) + 1;
+        synchronized (io) {
+            openSegment(next);
+        }
+        return records;
+    }
+
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "storage-journal");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("журнал хранилища включен: {}, fsync: {}", dir.toAbsolutePath(), fsync);
+    }
+
+    void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        writer.join();
+        writer = null;
+        synchronized (io) {
+            try {
+                flush(true);
+                segment.close();
+            } catch (IOException e) {
+                log.error("не удалось дописать журнал хранилища", e);
+            }
+        }
+    }
+
+    // вызывается до изменения данных в памяти: после сбоя записи журнала изменения отклоняются целиком
+    void checkAvailable() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("журнал хранилища недоступен", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет записи в очередь на запись и возвращает номер последней из них, 0 - если журнал выключен
+     * или записей нет. Порядок вызовов определяет порядок записей в файле. Изменение к этому моменту уже видно
+     * в памяти, поэтому записи принимаются и после сбоя, случившегося с момента checkAvailable: такое изменение
+     * теряется так же, как подтвержденное перед самым сбоем, а при fsync=always ошибку вернет awaitDurable.
+     */
+    long append(Consumer<RecordBuffer> records) {
+        if (!enabled) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long before = pending.records();
+            records.accept(pending);
+            long added = pending.records() - before;
+            if (added == 0) {
+                return 0;
+            }
+            appendedSeq += added;
+            recordsSinceRotation += added;
+            appended.signal();
+            return appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // при fsync=always ждет, пока запись с этим номером окажется на диске
+    void awaitDurable(long seq) {
+        if (seq == 0 || fsync != FsyncPolicy.ALWAYS) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (writtenSeq < seq && failure == null) {
+                written.awaitUninterruptibly();
+            }
+            if (writtenSeq < seq) {
+                throw new IllegalStateException("журнал хранилища недоступен", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getRecordsSinceRotation() {
+        lock.lock();
+        try {
+            return recordsSinceRotation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает и сбрасывает на диск текущий сегмент и начинает следующий. Вызывающий не дает добавлять записи
+     * во время смены, поэтому все, что изменено до нее, лежит в прежних сегментах. Возвращает номер нового.
+     */
+    long rotate() throws IOException {
+        synchronized (io) {
+            flush(true);
+            segment.close();
+            openSegment(segmentIndex + 1);
+            lock.lock();
+            try {
+                recordsSinceRotation = 0;
+            } finally {
+                lock.unlock();
+            }
+            return segmentIndex;
+        }
+    }
+
+    /**
+     * Пишет снимок, с которого начнется восстановление вместо сегментов до index, и удаляет эти сегменты и
+     * прежние снимки. Снимок пишется во временный файл и переименовывается, только когда он целиком на диске.
+     */
+    long writeSnapshot(long index, Consumer<SnapshotWriter> dump) throws IOException {
+        Path snapshot = path(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX);
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + TEMP_SUFFIX);
+        long records;
+        try (SnapshotWriter writer = new SnapshotWriter(temp)) {
+            dump.accept(writer);
+            records = writer.records();
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        for (long old : indexes(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (old < index) {
+                Files.deleteIfExists(path(SNAPSHOT_PREFIX, old, SNAPSHOT_SUFFIX));
+            }
+        }
+        for (long old : indexes(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (old < index) {
+                Files.deleteIfExists(path(SEGMENT_PREFIX, old, SEGMENT_SUFFIX));
+            }
+        }
+        return records;
+    }
+
+    private void runWriter() {
+        while (running) {
+            lock.lock();
+            try {
+                if (pending.size() == 0 && running) {
+                    appended.await(fsync == FsyncPolicy.INTERVAL ? fsyncIntervalMillis : IDLE_WAIT_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            synchronized (io) {
+                try {
+                    flush(false);
+                } catch (IOException e) {
+                    log.error("не удалось записать журнал хранилища, изменения больше не принимаются", e);
+                    lock.lock();
+                    try {
+                        failure = e;
+                        written.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // под монитором io; sync - сбросить на диск независимо от политики
+    private void flush(boolean sync) throws IOException {
+        RecordBuffer batch;
+        long seq;
+        lock.lock();
+        try {
+            batch = pending;
+            pending = writing;
+            writing = batch;
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer content = batch.content();
+        if (content.hasRemaining()) {
+            unsynced = true;
+        }
+        while (content.hasRemaining()) {
+            segment.write(content);
+        }
+        batch.clear();
+        long now = System.currentTimeMillis();
+        boolean due = fsync == FsyncPolicy.ALWAYS
+                || fsync == FsyncPolicy.INTERVAL && now - lastSyncMillis >= fsyncIntervalMillis;
+        if (unsynced && (sync || due)) {
+            segment.force(false);
+            unsynced = false;
+            lastSyncMillis = now;
+        }
+        lock.lock();
+        try {
+            writtenSeq = seq;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long replay(Path path, Consumer<RecordReader> apply, boolean lastSegment) throws IOException {
+        long records = 0;
+        long valid;
+        try (RecordReader reader = new RecordReader(path)) {
+            while (reader.next()) {
+                apply.accept(reader);
+                records++;
+            }
+            if (reader.atEnd()) {
+                return records;
+            }
+            valid = reader.position();
+        }
+        if (!lastSegment) {
+            throw new IllegalStateException("файл хранилища " + path + " поврежден, смещение " + valid);
+        }
+        log.warn("журнал {} обрезан по последней целой записи, смещение {}", path, valid);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        return records;
+    }
+
+    private void openSegment(long index) throws IOException {
+        segment = FileChannel.open(path(SEGMENT_PREFIX, index, SEGMENT_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentIndex = index;
+        lastSyncMillis = System.currentTimeMillis();
+        syncDirectory();
+    }
+
+    // чтобы созданный или переименованный файл пережил падение ОС; не на всех системах каталог можно открыть
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("не удалось сбросить на диск каталог {}", dir, e);
+        }
+    }
+
+    private Path path(String prefix, long index, String suffix) {
+        return dir.resolve(String.format("%s%020d%s", prefix, index, suffix));
+    }
+
+    private List<Long> indexes(String prefix, String suffix) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        for (Path file : list(suffix)) {
+            String name = file.getFileName().toString();
+            String index = name.substring(0, name.length() - suffix.length());
+            if (index.startsWith(prefix) && index.length() > prefix.length()
+                    && index.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                indexes.add(Long.parseLong(index.substring(prefix.length())));
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + suffix)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+}
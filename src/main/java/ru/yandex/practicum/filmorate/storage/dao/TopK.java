@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Лучшие пары {id, счет} без сортировки всех кандидатов: больше счет, при равенстве меньше id.
+ * На вершине кучи худшая из отобранных пар, так что новый кандидат сравнивается только с ней.
+ */
+final class TopK {
+    private static final Comparator<long[]> BEST_FIRST = Comparator.<long[]>comparingLong(entry -> -entry[1])
+            .thenComparingLong(entry -> entry[0]);
+
+    private final int size;
+    private final PriorityQueue<long[]> entries;
+
+    TopK(int size) {
+        this.size = size;
+        this.entries = new PriorityQueue<>(size + 1, BEST_FIRST.reversed());
+    }
+
+    // кандидаты без положительного счета не отбираются
+    void offer(long id, long score) {
+        if (score <= 0) {
+            return;
+        }
+        if (entries.size() < size) {
+            entries.add(new long[]{id, score});
+            return;
+        }
+        long[] worst = entries.peek();
+        if (score > worst[1] || (score == worst[1] && id < worst[0])) {
+            entries.poll();
+            entries.add(new long[]{id, score});
+        }
+    }
+
+    List<long[]> sorted() {
+        List<long[]> result = new ArrayList<>(entries);
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    long[] sortedIds() {
+        return sorted().stream().mapToLong(entry -> entry[0]).toArray();
+    }
+}
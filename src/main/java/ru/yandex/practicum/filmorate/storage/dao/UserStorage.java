@@ -1,22 +1,33 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface UserStorage {
     User findUserById(long id);
 
     User createUser(User user);
 
+    List<User> createUsers(List<User> users);
+
     User updateUser(User user);
 
     List<User> findAllUsers();
 
-    void deleteUserById(long id);
+    List<User> findUsers(long afterId, int limit);
+
+    List<User> findUsersByIds(Collection<Long> ids);
+
+    // возвращает фильмы, которые вместе с пользователем лишились его лайков
+    Set<Long> deleteUserById(long id);
 
     void deleteAllUsers();
 
     List<User> getFriendsList(long id);
 
     List<User> getCommonFriends(long id, long otherId);
+
+    List<User> getFriendSuggestions(long id, int limit);
 }
@@ -1,35 +1,61 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
 
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+@ConditionalOnProperty(name = "filmorate.storage.type", havingValue = "jdbc", matchIfMissing = true)
 @Component
 public class UserStorageImpl implements UserStorage {
     private final JdbcTemplate jdbcTemplate;
     private final FriendshipStorage friendshipStorage;
+    private final LikeStorage likeStorage;
+    private final EntityVersions versions;
+    private final SimpleJdbcInsert userInsert;
+    private final int batchSize;
 
-    public UserStorageImpl(JdbcTemplate jdbcTemplate, FriendshipStorage friendshipStorage) {
+    public UserStorageImpl(JdbcTemplate jdbcTemplate, FriendshipStorage friendshipStorage, LikeStorage likeStorage,
+                           EntityVersions versions, @Value("${filmorate.jdbc.batch-size:500}") int batchSize) {
         this.jdbcTemplate = jdbcTemplate;
         this.friendshipStorage = friendshipStorage;
+        this.likeStorage = likeStorage;
+        this.versions = versions;
+        this.batchSize = batchSize;
+        this.userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingGeneratedKeyColumns("user_id");
     }
 
     @Override
-    public  User findUserById(long id) {
+    @Cacheable(cacheNames = "users", key = "#id")
+    public User findUserById(long id) {
         try {
             String sql = "select * from users where user_id = ?";
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeUser(rs), id);
+            User user = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeUser(rs), id);
+            fillFriendsStatuses(List.of(user));
+            return user;
         } catch (EmptyResultDataAccessException exp) {
             throw new IncorrectIdException("пользователя с id " + id + " не существует!");
         }
@@ -37,60 +63,120 @@ public class UserStorageImpl implements UserStorage {
 
     @Override
     public User createUser(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("user_id");
-        long id = simpleJdbcInsert.executeAndReturnKey(toMap(user)).longValue();
+        long id = userInsert.executeAndReturnKey(toMap(user)).longValue();
         user.setId(id);
+        versions.userChanged(id);
         return user;
     }
 
+    @Override
+    public List<User> createUsers(List<User> users) {
+        String sql = "insert into users(email, login, name, birthday) values (?, ?, ?, ?)";
+        List<Long> ids = BatchInserts.insertAndReturnKeys(jdbcTemplate, sql, "user_id", users, batchSize,
+                (ps, user) -> {
+                    ps.setString(1, user.getEmail());
+                    ps.setString(2, user.getLogin());
+                    ps.setString(3, user.getName());
+                    ps.setDate(4, user.getBirthday() == null ? null : Date.valueOf(user.getBirthday()));
+                });
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(ids.get(i));
+        }
+        versions.usersChanged(ids);
+        return users;
+    }
+
     @Override
     public User updateUser(User updateUser) {
         jdbcTemplate.update("update users set email = ?, login = ?, name = ?, birthday = ? where user_id = ?",
                 updateUser.getEmail(), updateUser.getLogin(), updateUser.getName(), updateUser.getBirthday(),
                 updateUser.getId());
+        versions.userChanged(updateUser.getId());
         return findUserById(updateUser.getId());
     }
 
     @Override
     public List<User> findAllUsers() {
-        String sql = "select * from users";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs));
+        String sql = "select * from users order by user_id";
+        return fillFriendsStatuses(jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs)));
+    }
+
+    @Override
+    public List<User> findUsers(long afterId, int limit) {
+        String sql = "select * from users where user_id > ? order by user_id limit ?";
+        return fillFriendsStatuses(jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), afterId, limit));
     }
 
     @Override
-    public void deleteUserById(long id) {
+    @Transactional
+    public Set<Long> deleteUserById(long id) {
         try {
             findUserById(id);
+            // вместе с пользователем каскадно удаляются его лайки и строки дружбы у других пользователей: меняются
+            // только эти фильмы и пользователи
+            Set<Long> likedFilmIds = likeStorage.getLikedFilmIds(id);
+            long[] followerIds = friendshipStorage.getFollowerIds(id);
+            // лайки пользователя удаляются каскадно, поэтому счётчики фильмов уменьшаются заранее
+            jdbcTemplate.update("update films set like_count = like_count - 1 where film_id in " +
+                    "(select film_id from likes where user_id = ?)", id);
             jdbcTemplate.update("delete from users where user_id = ?", id);
+            friendshipStorage.onUserDeleted(id);
+            likeStorage.onUserDeleted(id);
+            versions.userChanged(id);
+            versions.usersChanged(Arrays.stream(followerIds).boxed().collect(Collectors.toList()));
+            versions.filmsChanged(likedFilmIds);
+            return likedFilmIds;
         } catch (EmptyResultDataAccessException exp) {
             throw new IncorrectIdException("пользователя с id " + id + " не существует!");
         }
     }
 
     @Override
+    @Transactional
     public void deleteAllUsers() {
+        jdbcTemplate.update("update films set like_count = 0");
         jdbcTemplate.update("delete from users");
+        friendshipStorage.onAllUsersDeleted();
+        likeStorage.onAllLikesDeleted();
+        versions.allUsersChanged();
+        versions.allFilmsChanged();
+    }
+
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        jdbcTemplate.query("select * from users where user_id = any(?)", SqlArrays.idsArray(ids), (ResultSet rs) -> {
+            User user = makeUser(rs);
+            usersById.put(user.getId(), user);
+        });
+        List<User> users = ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return fillFriendsStatuses(users);
     }
 
+    // списки друзей берутся из индекса в памяти, sql нужен только чтобы загрузить самих пользователей
     @Override
     public List<User> getFriendsList(long id) {
-        String sql = "select * from users where user_id in " +
-                "(select friend_id from friendship_statuses where user_id = ?)";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), id);
+        return findUsersByIds(toList(friendshipStorage.getFriendIds(id)));
     }
 
     @Override
     public List<User> getCommonFriends(long id, long otherId) {
-        try {
-            String sql = "select * from users where user_id in " +
-                    "(select friend_id from friendship_statuses where user_id = ? and friend_id in " +
-                    "(select friend_id from friendship_statuses where user_id = ?))";
-            return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), id, otherId);
-        } catch (EmptyResultDataAccessException exp) {
-            throw new IncorrectIdException("пользователя с таким id не существует!");
-        }
+        return findUsersByIds(toList(friendshipStorage.getCommonFriendIds(id, otherId)));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(long id, int limit) {
+        return findUsersByIds(toList(friendshipStorage.getSuggestedFriendIds(id, limit)));
+    }
+
+    private static List<Long> toList(long[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toList());
     }
 
     private User makeUser(ResultSet rs) throws SQLException {
@@ -98,17 +184,24 @@ public class UserStorageImpl implements UserStorage {
         String email = rs.getString("email");
         String login = rs.getString("login");
         String name = rs.getString("name");
-        Map<Long, FriendStatus> friendsStatuses = friendshipStorage.getFriendsStatuses(id);
         LocalDate birthday = null;
         if (rs.getDate("birthday") != null) {
             birthday = rs.getDate("birthday").toLocalDate();
         }
-        User user = User.builder().email(email).login(login).name(name).birthday(birthday)
-                .friendsStatuses(friendsStatuses).build();
+        User user = User.builder().email(email).login(login).name(name).birthday(birthday).build();
         user.setId(id);
         return user;
     }
 
+    private List<User> fillFriendsStatuses(List<User> users) {
+        List<Long> ids = users.stream().map(User::getId).collect(Collectors.toList());
+        Map<Long, Map<Long, FriendStatus>> statuses = friendshipStorage.getFriendsStatusesByUserIds(ids);
+        for (User user : users) {
+            user.setFriendsStatuses(statuses.getOrDefault(user.getId(), new HashMap<>()));
+        }
+        return users;
+    }
+
     private Map<String, Object> toMap(User user) {
         Map<String, Object> values = new HashMap<>();
         values.put("email", user.getEmail());
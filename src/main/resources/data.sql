@@ -1,5 +0,0 @@
-INSERT INTO genres(genre)
-VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'), ('Боевик');
-INSERT INTO rating(rating)
-VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
-
@@ -39,4 +39,10 @@ CREATE TABLE IF NOT EXISTS friendship_statuses (
 CREATE TABLE IF NOT EXISTS likes (
 	film_id integer REFERENCES films (film_id) ON DELETE CASCADE,
 	user_id integer REFERENCES users (user_id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+INSERT INTO genres(genre)
+VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'), ('Боевик');
+INSERT INTO rating(rating)
+VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
+
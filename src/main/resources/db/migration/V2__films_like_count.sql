@@ -0,0 +1,6 @@
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count integer DEFAULT 0 NOT NULL;
+
+UPDATE films AS f SET like_count = (SELECT count(*) FROM likes AS l WHERE l.film_id = f.film_id)
+WHERE like_count <> (SELECT count(*) FROM likes AS l WHERE l.film_id = f.film_id);
+
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC, film_id);
@@ -0,0 +1,26 @@
+DELETE FROM likes WHERE film_id IS NULL OR user_id IS NULL;
+DELETE FROM likes AS l WHERE EXISTS (SELECT 1 FROM likes AS d
+	WHERE d.film_id = l.film_id AND d.user_id = l.user_id AND d._ROWID_ < l._ROWID_);
+ALTER TABLE likes ALTER COLUMN film_id SET NOT NULL;
+ALTER TABLE likes ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE likes ADD CONSTRAINT likes_pk PRIMARY KEY (film_id, user_id);
+CREATE INDEX likes_user_film_idx ON likes (user_id, film_id);
+
+DELETE FROM films_genres WHERE film_id IS NULL OR genre_id IS NULL;
+DELETE FROM films_genres AS g WHERE EXISTS (SELECT 1 FROM films_genres AS d
+	WHERE d.film_id = g.film_id AND d.genre_id = g.genre_id AND d._ROWID_ < g._ROWID_);
+ALTER TABLE films_genres ALTER COLUMN film_id SET NOT NULL;
+ALTER TABLE films_genres ALTER COLUMN genre_id SET NOT NULL;
+ALTER TABLE films_genres ADD CONSTRAINT films_genres_pk PRIMARY KEY (film_id, genre_id);
+CREATE INDEX films_genres_genre_film_idx ON films_genres (genre_id, film_id);
+
+DELETE FROM friendship_statuses WHERE user_id IS NULL OR friend_id IS NULL;
+DELETE FROM friendship_statuses AS s WHERE EXISTS (SELECT 1 FROM friendship_statuses AS d
+	WHERE d.user_id = s.user_id AND d.friend_id = s.friend_id AND d._ROWID_ < s._ROWID_);
+ALTER TABLE friendship_statuses ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE friendship_statuses ALTER COLUMN friend_id SET NOT NULL;
+ALTER TABLE friendship_statuses ADD CONSTRAINT friendship_statuses_pk PRIMARY KEY (user_id, friend_id);
+CREATE INDEX friendship_statuses_friend_user_idx ON friendship_statuses (friend_id, user_id);
+
+UPDATE films AS f SET like_count = (SELECT count(*) FROM likes AS l WHERE l.film_id = f.film_id)
+WHERE like_count <> (SELECT count(*) FROM likes AS l WHERE l.film_id = f.film_id);
@@ -1,7 +0,0 @@
-DROP TABLE films_genres;
-DROP TABLE genres;
-DROP TABLE friendship_statuses;
-DROP TABLE likes;
-DROP TABLE users;
-DROP TABLE films;
-DROP TABLE rating;
\ No newline at end of file
@@ -2,15 +2,20 @@ package ru.yandex.practicum.filmorate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import ru.yandex.practicum.filmorate.controllers.FilmController;
@@ -18,14 +23,19 @@ import ru.yandex.practicum.filmorate.exceptions.ResponseExceptionHandler;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.service.user.UserService;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 @SpringBootTest
@@ -37,6 +47,10 @@ class FilmControllerTest {
     @Autowired
     private FilmService service;
     @Autowired
+    private UserService userService;
+    @Autowired
+    private PopularityLeaderboard leaderboard;
+    @Autowired
     private MockMvc mockMvc;
     @Autowired
     private ObjectMapper objectMapper;
@@ -60,6 +74,7 @@ class FilmControllerTest {
     @AfterEach
     public void removeFilms() throws Exception {
         service.deleteAllFilms();
+        userService.deleteAllUsers();
     }
 
     @Test
@@ -67,6 +82,7 @@ class FilmControllerTest {
         Film ourFilm = service.createFilm(film1);
         ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/films/" + ourFilm.getId()));
         response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(QueryBudget.atMost(3));
         film1.setId(ourFilm.getId());
         response.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(film1)));
     }
@@ -191,6 +207,7 @@ class FilmControllerTest {
         ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/films"));
         response.andExpect(MockMvcResultMatchers.status().is(200));
         response.andExpect(MockMvcResultMatchers.content().json("[]"));
+        response.andExpect(QueryBudget.atMost(1));
     }
 
     @Test
@@ -210,8 +227,10 @@ class FilmControllerTest {
                 .content(objectMapper.writeValueAsString(film1Update)));
         putResponse.andExpect(MockMvcResultMatchers.status().is(200));
         putResponse.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(film1Update)));
+        putResponse.andExpect(QueryBudget.atMost(5));
         ResultActions getResponse = mockMvc.perform(MockMvcRequestBuilders.get("/films"));
         getResponse.andExpect(MockMvcResultMatchers.status().is(200));
+        getResponse.andExpect(QueryBudget.atMost(3));
         getResponse.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(filmsList)));
     }
 
@@ -293,6 +312,300 @@ class FilmControllerTest {
                 "Ошибка при указании id фильма/пользователя", "errorMessage", "фильма с id " + 999 + " не существует!"))));
     }
 
+    @Test
+    public void getFilms_withKeysetPaginationTest() throws Exception {
+        Film firstFilm = service.createFilm(film1);
+        Film secondFilm = service.createFilm(film2);
+        ResultActions firstPage = mockMvc.perform(MockMvcRequestBuilders.get("/films").param("limit", "1"));
+        firstPage.andExpect(MockMvcResultMatchers.status().isOk());
+        firstPage.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(firstFilm))));
+        firstPage.andExpect(QueryBudget.atMost(3));
+        String cursor = firstPage.andReturn().getResponse().getHeader("X-Next-Cursor");
+        ResultActions secondPage = mockMvc.perform(MockMvcRequestBuilders.get("/films")
+                .param("after", cursor).param("limit", "1"));
+        secondPage.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(secondFilm))));
+        String nextCursor = secondPage.andReturn().getResponse().getHeader("X-Next-Cursor");
+        ResultActions lastPage = mockMvc.perform(MockMvcRequestBuilders.get("/films")
+                .param("after", nextCursor).param("limit", "1"));
+        lastPage.andExpect(MockMvcResultMatchers.content().json("[]"));
+        lastPage.andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getFilms_withIncorrectCursorTest() throws Exception {
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/films").param("after", "???"));
+        response.andExpect(MockMvcResultMatchers.status().is(400));
+        response.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(Map.of("error",
+                "Ошибка при валидации", "errorMessage", "некорректный курсор: ???"))));
+    }
+
+    @Test
+    public void exportFilms_asNdjsonTest() throws Exception {
+        Film firstFilm = service.createFilm(film1);
+        Film secondFilm = service.createFilm(film2);
+        MvcResult asyncResult = mockMvc.perform(MockMvcRequestBuilders.get("/films/export"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult));
+        response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON));
+        String body = response.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        String[] lines = body.split("\n");
+        Assertions.assertEquals(2, lines.length);
+        JSONAssert.assertEquals(objectMapper.writeValueAsString(firstFilm), lines[0], false);
+        JSONAssert.assertEquals(objectMapper.writeValueAsString(secondFilm), lines[1], false);
+    }
+
+    @Test
+    public void getTopFilms_orderedByLikesThenByIdTest() throws Exception {
+        Film firstFilm = service.createFilm(film1);
+        Film secondFilm = service.createFilm(film2);
+        Film thirdFilm = service.createFilm(Film.builder().name("Seven").description("nice noir")
+                .releaseDate(LocalDate.of(1995, 9, 22)).duration(127).mpa(new Rating(4, "R")).build());
+        User user = userService.createUser(User.builder().email("myfirstemail@gmail.ru").login("myLog")
+                .name("Konstantin").birthday(LocalDate.of(2000, 5, 10)).build());
+        service.addLikeToFilm(thirdFilm.getId(), user.getId());
+        service.addLikeToFilm(thirdFilm.getId(), user.getId());
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("count", "2"));
+        response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+        response.andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(thirdFilm.getId()));
+        response.andExpect(MockMvcResultMatchers.jsonPath("$[0].likes.length()").value(1));
+        response.andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(firstFilm.getId()));
+        response.andExpect(QueryBudget.atMost(3));
+        service.deleteLike(thirdFilm.getId(), user.getId());
+        service.addLikeToFilm(secondFilm.getId(), user.getId());
+        ResultActions changed = mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"));
+        changed.andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3));
+        changed.andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(secondFilm.getId()));
+        changed.andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(firstFilm.getId()));
+        changed.andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(thirdFilm.getId()));
+    }
+
+    @Test
+    public void getTopFilms_likeAfterDeleteDoesNotRestoreFilmTest() throws Exception {
+        Film deleted = service.createFilm(film1);
+        Film film = service.createFilm(film2);
+        service.deleteFilmById(deleted.getId());
+        leaderboard.changeLikes(deleted.getId(), 1);
+        Assertions.assertFalse(leaderboard.contains(deleted.getId()));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("count", "1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(film.getId()));
+    }
+
+    @Test
+    public void getFilmAndTopFilms_notModifiedUntilChangedTest() throws Exception {
+        Film film = service.createFilm(film1);
+        Film other = service.createFilm(film2);
+        User user = userService.createUser(User.builder().email("myfirstemail@gmail.ru").login("myLog")
+                .birthday(LocalDate.of(2000, 5, 10)).build());
+        String filmETag = expectNotModifiedUntilChanged("/films/" + film.getId(), null);
+        String topETag = expectNotModifiedUntilChanged("/films/popular", null);
+        service.addLikeToFilm(film.getId(), user.getId());
+        expectNotModifiedUntilChanged("/films/" + film.getId(), filmETag);
+        expectNotModifiedUntilChanged("/films/popular", topETag);
+        String otherETag = expectNotModifiedUntilChanged("/films/" + other.getId(), null);
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/" + other.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/" + otherETag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    public void getTopFilms_filteredByGenreAndYearTest() throws Exception {
+        Film first = service.createFilm(filmWithGenres("Nomadland", LocalDate.of(2020, 9, 11), 1));
+        Film second = service.createFilm(filmWithGenres("Minari", LocalDate.of(2020, 1, 26), 1, 2));
+        Film third = service.createFilm(filmWithGenres("Enter the void", LocalDate.of(2010, 4, 29), 2));
+        for (int i = 0; i < 3; i++) {
+            User user = userService.createUser(User.builder().email("user" + i + "@mail.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).build());
+            service.addLikeToFilm(third.getId(), user.getId());
+            if (i < 2) {
+                service.addLikeToFilm(first.getId(), user.getId());
+            }
+            if (i < 1) {
+                service.addLikeToFilm(second.getId(), user.getId());
+            }
+        }
+        expectTopFilms(Map.of("genreId", "1"), first, second)
+                .andExpect(QueryBudget.atMost(3));
+        expectTopFilms(Map.of("year", "2020"), first, second);
+        expectTopFilms(Map.of("genreId", "2"), third, second);
+        expectTopFilms(Map.of("genreId", "2", "year", "2020"), second);
+        expectTopFilms(Map.of("year", "1999"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("genreId", "999"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+
+        second.setGenres(new TreeSet<>(Comparator.comparing(Genre::getId)));
+        second.setReleaseDate(LocalDate.of(2010, 1, 26));
+        service.updateFilm(second);
+        expectTopFilms(Map.of("genreId", "2"), third);
+        expectTopFilms(Map.of("year", "2010"), third, second);
+        leaderboard.rebuild();
+        expectTopFilms(Map.of("genreId", "1", "year", "2020"), first);
+        expectTopFilms(Map.of("year", "2010"), third, second);
+    }
+
+    @Test
+    public void searchFilms_rankedByRelevanceThenByLikesTest() throws Exception {
+        Film hedgehog = service.createFilm(Film.builder().name("Ёжик в тумане").description("Мультфильм о ёжике")
+                .releaseDate(LocalDate.of(1975, 1, 1)).duration(10).mpa(new Rating(1, "G")).build());
+        Film fog = service.createFilm(Film.builder().name("Туман").description("Фильм ужасов, ежик не появляется")
+                .releaseDate(LocalDate.of(1980, 2, 8)).duration(89).mpa(new Rating(4, "R")).build());
+        Film fogOfWar = service.createFilm(Film.builder().name("Туманность Андромеды").description("Фантастика")
+                .releaseDate(LocalDate.of(1967, 12, 1)).duration(77).mpa(new Rating(2, "PG")).build());
+        User user = userService.createUser(User.builder().email("myfirstemail@gmail.ru").login("myLog")
+                .birthday(LocalDate.of(2000, 5, 10)).build());
+        service.addLikeToFilm(fogOfWar.getId(), user.getId());
+
+        expectSearch(Map.of("query", "ЕЖИК"), hedgehog, fog)
+                .andExpect(QueryBudget.atMost(3));
+        expectSearch(Map.of("query", "ежик", "by", "title"), hedgehog);
+        expectSearch(Map.of("query", "туман"), fog, fogOfWar, hedgehog);
+        expectSearch(Map.of("query", "тумане ежик"), hedgehog);
+        expectSearch(Map.of("query", "туман", "by", "description"));
+        expectSearch(Map.of("query", "тум", "count", "2"), fogOfWar, hedgehog);
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "туман").param("by", "genre"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", " "))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+
+        fog.setName("Мгла");
+        service.updateFilm(fog);
+        service.deleteFilmById(hedgehog.getId());
+        expectSearch(Map.of("query", "туман"), fogOfWar);
+        expectSearch(Map.of("query", "мгла ёжик"), fog);
+    }
+
+    @Test
+    public void getFilms_queryBudgetDoesNotDependOnFilmsCountTest() throws Exception {
+        User user = userService.createUser(User.builder().email("myfirstemail@gmail.ru").login("myLog")
+                .name("Konstantin").birthday(LocalDate.of(2000, 5, 10)).build());
+        for (int i = 0; i < 20; i++) {
+            Film film = Film.builder().name("film" + i).description("film number " + i)
+                    .releaseDate(LocalDate.of(2000 + i, 1, 1)).duration(90).mpa(new Rating(1 + i % 5))
+                    .genres(new TreeSet<>(Comparator.comparing(Genre::getId))).build();
+            film.getGenres().add(new Genre(1 + i % 6));
+            long filmId = service.createFilm(film).getId();
+            service.addLikeToFilm(filmId, user.getId());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/films"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(20))
+                .andExpect(QueryBudget.atMost(3));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("count", "10"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(10))
+                .andExpect(QueryBudget.atMost(3));
+    }
+
+    @Test
+    public void createFilms_inBatchTest() throws Exception {
+        film2.getGenres().add(new Genre(1, "Комедия"));
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(film1, film2))));
+        response.andExpect(MockMvcResultMatchers.status().is(201));
+        response.andExpect(QueryBudget.atMost(3));
+        Long[] ids = objectMapper.readValue(response.andReturn().getResponse().getContentAsString(), Long[].class);
+        Assertions.assertEquals(2, ids.length);
+        film1.setId(ids[0]);
+        film2.setId(ids[1]);
+        ResultActions getResponse = mockMvc.perform(MockMvcRequestBuilders.get("/films"));
+        getResponse.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(film1, film2))));
+    }
+
+    @Test
+    public void createFilms_inBatchWithNotValidFilmTest() throws Exception {
+        Film film = Film.builder().description("niceFilm").releaseDate(LocalDate.of(1995, 9, 22))
+                .duration(80)
+                .mpa(new Rating(3))
+                .build();
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(film1, film))));
+        response.andExpect(MockMvcResultMatchers.status().is(400));
+        response.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(
+                new ResponseExceptionHandler.ValidationErrorResponse(List.of(
+                        new ResponseExceptionHandler.Violation("createFilms.films[1].name", "название не может быть пустым"))))));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films")).andExpect(MockMvcResultMatchers.content().json("[]"));
+    }
+
+    @Test
+    public void createFilms_inBatchIgnoresLikesAndRollsBackIndexesTest() throws Exception {
+        User user = userService.createUser(User.builder().email("myfirstemail@gmail.ru").login("myLog")
+                .birthday(LocalDate.of(2000, 5, 10)).build());
+        film1.getLikes().add(user.getId());
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(film1))));
+        response.andExpect(MockMvcResultMatchers.status().is(201));
+        long id = objectMapper.readValue(response.andReturn().getResponse().getContentAsString(), Long[].class)[0];
+        Assertions.assertTrue(service.getFilmById(id).getLikes().isEmpty());
+        Assertions.assertEquals(0, leaderboard.getLikes(id));
+
+        film2.getGenres().add(new Genre(999));
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(film1, film2))))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        film2.getGenres().clear();
+        film2.setMpa(new Rating(99, "XXX"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(film1, film2))))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        Assertions.assertEquals(1, service.getAllFilms().size());
+        Assertions.assertEquals(List.of(id), leaderboard.getTopFilmIds(10));
+        expectSearch(Map.of("query", "void"));
+    }
+
+    // previousETag - версия до изменения: ответ должен прийти заново, а повторный запрос - получить 304 без SQL
+    private String expectNotModifiedUntilChanged(String uri, String previousETag) throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(uri);
+        if (previousETag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, previousETag);
+        }
+        String eTag = mockMvc.perform(request)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assertions.assertNotNull(eTag);
+        Assertions.assertNotEquals(previousETag, eTag);
+        mockMvc.perform(MockMvcRequestBuilders.get(uri).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(MockMvcResultMatchers.content().string(""))
+                .andExpect(QueryBudget.atMost(0));
+        return eTag;
+    }
+
+    private Film filmWithGenres(String name, LocalDate releaseDate, int... genreIds) {
+        Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId));
+        for (int genreId : genreIds) {
+            genres.add(new Genre(genreId));
+        }
+        return Film.builder().name(name).description("Wonderful film").releaseDate(releaseDate).duration(100)
+                .mpa(new Rating(2, "PG")).genres(genres).build();
+    }
+
+    private ResultActions expectTopFilms(Map<String, String> params, Film... films) throws Exception {
+        return expectFilms("/films/popular", params, films);
+    }
+
+    private ResultActions expectSearch(Map<String, String> params, Film... films) throws Exception {
+        return expectFilms("/films/search", params, films);
+    }
+
+    private ResultActions expectFilms(String url, Map<String, String> params, Film... films) throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(url);
+        params.forEach(request::param);
+        ResultActions response = mockMvc.perform(request);
+        response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(films.length));
+        for (int i = 0; i < films.length; i++) {
+            response.andExpect(MockMvcResultMatchers.jsonPath("$[" + i + "].id").value(films[i].getId()));
+        }
+        return response;
+    }
+
     private void addFilmsForUpdate() throws Exception {
         service.createFilm(film1);
         service.createFilm(film2);
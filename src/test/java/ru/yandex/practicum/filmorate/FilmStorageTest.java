@@ -7,7 +7,10 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -18,7 +21,9 @@ import ru.yandex.practicum.filmorate.storage.dao.FilmStorageImpl;
 import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorageImpl;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,13 +37,14 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class FilmStorageTest {
     private final FilmStorageImpl filmStorage;
     private final UserStorageImpl userStorage;
     private final LikeStorage likeStorage;
     private final FilmService filmService;
+    private final CacheManager cacheManager;
+    private final DataSource dataSource;
     private Film firstFilm;
     private Film secondFilm;
 
@@ -65,6 +71,21 @@ public class FilmStorageTest {
                 .hasFieldOrPropertyWithValue("name", "Nomadland");
     }
 
+    @Test
+    public void findFilmById_fromCacheUntilUpdateTest() {
+        long film1 = filmStorage.createFilm(firstFilm);
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache("films");
+        long hits = cache.getNativeCache().stats().hitCount();
+        Film film = filmStorage.findFilmById(film1);
+        Assertions.assertSame(film, filmStorage.findFilmById(film1));
+        Assertions.assertEquals(hits + 1, cache.getNativeCache().stats().hitCount());
+        Film updatedFilm = Film.builder().name("Nomadland UPDATE").description("Wonderful film")
+                .releaseDate(LocalDate.of(2020, 9, 11)).duration(108).mpa(new Rating(2)).build();
+        updatedFilm.setId(film1);
+        filmStorage.updateFilm(updatedFilm);
+        assertThat(filmStorage.findFilmById(film1)).hasFieldOrPropertyWithValue("name", "Nomadland UPDATE");
+    }
+
     @Test
     public void findFilmById_withIncorrectIdTest() {
         filmStorage.createFilm(firstFilm);
@@ -120,6 +141,23 @@ public class FilmStorageTest {
                 .hasFieldOrPropertyWithValue("name", "Enter the void");
     }
 
+    @Test
+    public void updateFilm_withPartlyChangedGenresTest() {
+        long film2 = filmService.createFilm(secondFilm).getId();
+        Film updatedFilm = Film.builder().name("Enter the void").description("Great film")
+                .releaseDate(LocalDate.of(2010, 4, 29)).duration(143).mpa(new Rating(5)).build();
+        updatedFilm.setGenres(new TreeSet<>(Comparator.comparing(Genre::getId)));
+        updatedFilm.getGenres().add(new Genre(4));
+        updatedFilm.getGenres().add(new Genre(1));
+        updatedFilm.setId(film2);
+        filmService.updateFilm(updatedFilm);
+        assertThat(filmService.getFilmById(film2))
+                .hasFieldOrPropertyWithValue("genres", Set.of(new Genre(1, "Комедия"), new Genre(4, "Триллер")));
+        updatedFilm.setGenres(null);
+        filmService.updateFilm(updatedFilm);
+        assertThat(filmService.getFilmById(film2)).hasFieldOrPropertyWithValue("genres", new TreeSet<>());
+    }
+
     @Test
     public void findAllFilms_whenFilmsListIsNotEmptyTest() {
         filmStorage.createFilm(firstFilm);
@@ -130,6 +168,27 @@ public class FilmStorageTest {
         Assertions.assertEquals(2, films.size());
     }
 
+    @Test
+    public void findAllFilms_withGenresAndLikesTest() {
+        long film1Id = filmService.createFilm(firstFilm).getId();
+        long film2Id = filmService.createFilm(secondFilm).getId();
+        User user = User.builder().name("Nicolas").email("myfirstemail@gmail.ru").login("myLog")
+                .birthday(LocalDate.of(2000, 5, 10))
+                .build();
+        user.setFriendsStatuses(new HashMap<>());
+        userStorage.createUser(user);
+        likeStorage.addLike(film2Id, user.getId());
+        List<Film> films = filmStorage.findAllFilms();
+        assertThat(films.get(0)).hasFieldOrPropertyWithValue("id", film1Id)
+                .hasFieldOrPropertyWithValue("mpa", new Rating(2, "PG"))
+                .hasFieldOrPropertyWithValue("genres", new TreeSet<>())
+                .hasFieldOrPropertyWithValue("likes", new HashSet<>());
+        assertThat(films.get(1)).hasFieldOrPropertyWithValue("id", film2Id)
+                .hasFieldOrPropertyWithValue("mpa", new Rating(5, "NC-17"))
+                .hasFieldOrPropertyWithValue("genres", Set.of(new Genre(2, "Драма"), new Genre(4, "Триллер")))
+                .hasFieldOrPropertyWithValue("likes", Set.of(user.getId()));
+    }
+
     @Test
     public void findAllFilms_whenFilmsListIsEmptyTest() {
         List<Film> films = filmStorage.findAllFilms();
@@ -194,4 +253,46 @@ public class FilmStorageTest {
         assertThat(bestFilms.get(1)).hasFieldOrPropertyWithValue("name", "Nomadland");
         assertThat(bestFilms.get(2)).hasFieldOrPropertyWithValue("name", "Enter the void");
     }
+
+    @Test
+    public void getTopFilms_afterDuplicateAndDeletedLikesTest() {
+        long film1Id = filmStorage.createFilm(firstFilm);
+        long film2Id = filmStorage.createFilm(secondFilm);
+        User user1 = User.builder().name("Nicolas").email("myfirstemail@gmail.ru").login("myLog")
+                .birthday(LocalDate.of(2000, 5, 10))
+                .build();
+        User user2 = User.builder().name("Nataly").email("myfirstemail@gmail.ru").login("Login")
+                .birthday(LocalDate.of(1989, 11, 03))
+                .build();
+        userStorage.createUser(user1);
+        userStorage.createUser(user2);
+        likeStorage.addLike(film1Id, user1.getId());
+        likeStorage.addLike(film1Id, user1.getId());
+        likeStorage.addLike(film2Id, user1.getId());
+        likeStorage.addLike(film2Id, user2.getId());
+        assertThat(filmStorage.getTopFilms(1).get(0)).hasFieldOrPropertyWithValue("id", film2Id);
+        likeStorage.deleteLike(film2Id, user1.getId());
+        userStorage.deleteUserById(user2.getId());
+        List<Film> bestFilms = filmStorage.getTopFilms(10);
+        assertThat(bestFilms.get(0)).hasFieldOrPropertyWithValue("id", film1Id)
+                .hasFieldOrPropertyWithValue("likes", Set.of(user1.getId()));
+        assertThat(bestFilms.get(1)).hasFieldOrPropertyWithValue("id", film2Id)
+                .hasFieldOrPropertyWithValue("likes", new HashSet<>());
+    }
+
+    @Test
+    public void streamAllFilms_usesSingleConnectionTest() {
+        long film1Id = filmService.createFilm(firstFilm).getId();
+        long film2Id = filmService.createFilm(secondFilm).getId();
+        List<Film> films = new ArrayList<>();
+        filmStorage.streamAllFilms(film -> {
+            // соединение курсора привязано к транзакции, догрузка жанров и лайков берет его же
+            Assertions.assertTrue(TransactionSynchronizationManager.hasResource(dataSource));
+            films.add(film);
+        });
+        assertThat(films.size()).isEqualTo(2);
+        assertThat(films.get(0)).hasFieldOrPropertyWithValue("id", film1Id);
+        assertThat(films.get(1)).hasFieldOrPropertyWithValue("id", film2Id)
+                .hasFieldOrPropertyWithValue("genres", secondFilm.getGenres());
+    }
 }
@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.exceptions.RejectedFriendRequestException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.user.UserService;
 import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorage;
@@ -17,13 +18,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static ru.yandex.practicum.filmorate.model.enums.FriendStatus.CONFIRMED;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class FriendshipStorageTest {
     private final UserStorageImpl userStorage;
     private final FriendshipStorage friendshipStorage;
@@ -54,6 +55,17 @@ public class FriendshipStorageTest {
         assertThat(actualUser2).hasFieldOrPropertyWithValue("friendsStatuses", new HashMap<>());
     }
 
+    @Test
+    public void addFriend_duplicateTest() {
+        User user1 = userStorage.createUser(firstUser);
+        User user2 = userStorage.createUser(secondUser);
+        friendshipStorage.addFriend(user1.getId(), user2.getId(), CONFIRMED);
+        assertThatThrownBy(() -> friendshipStorage.addFriend(user1.getId(), user2.getId(), CONFIRMED))
+                .isInstanceOf(RejectedFriendRequestException.class);
+        User actualUser1 = userService.getUserById(user1.getId());
+        assertThat(actualUser1).hasFieldOrPropertyWithValue("friendsStatuses", Map.of(user2.getId(), CONFIRMED));
+    }
+
     @Test
     public void deleteFriend_Test() {
         User user1 = userStorage.createUser(firstUser);
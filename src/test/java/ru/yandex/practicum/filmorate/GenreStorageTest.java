@@ -6,10 +6,11 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreStorageImpl;
 
 import java.util.List;
 
@@ -19,10 +20,10 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class GenreStorageTest {
-    private final GenreStorage genreStorage;
+    private final GenreStorageImpl genreStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void getAllGenres_Test() {
@@ -47,4 +48,26 @@ public class GenreStorageTest {
         assertThatThrownBy(() -> genreStorage.findGenreById(100)).isInstanceOf(IncorrectIdException.class)
                 .hasMessageContaining("жанра с id " + 100 + " не существует!");
     }
+
+    @Test
+    public void getGenreById_servedFromDirectoryWithoutQueriesTest() {
+        Genre genre = genreStorage.findGenreById(5);
+        Assertions.assertEquals(0, QueryBudget.count(() -> assertThat(genreStorage.findGenreById(5)).isSameAs(genre)));
+        Assertions.assertEquals(0, QueryBudget.count(() -> assertThatThrownBy(() -> genreStorage.findGenreById(100))
+                .isInstanceOf(IncorrectIdException.class)));
+    }
+
+    @Test
+    public void getGenreById_newGenreFoundAfterRefreshTest() {
+        jdbcTemplate.update("insert into genres(genre_id, genre) values (7, 'Боевик')");
+        try {
+            assertThatThrownBy(() -> genreStorage.findGenreById(7)).isInstanceOf(IncorrectIdException.class);
+            genreStorage.refresh();
+            assertThat(genreStorage.findGenreById(7)).hasFieldOrPropertyWithValue("name", "Боевик");
+        } finally {
+            jdbcTemplate.update("delete from genres where genre_id = 7");
+            genreStorage.refresh();
+        }
+        assertThatThrownBy(() -> genreStorage.findGenreById(7)).isInstanceOf(IncorrectIdException.class);
+    }
 }
@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("in-memory")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class InMemoryStorageTest {
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikeStorage likeStorage;
+
+    @BeforeEach
+    public void clearStorages() {
+        filmService.deleteAllFilms();
+        userService.deleteAllUsers();
+    }
+
+    @Test
+    public void storages_inMemoryBackendSelectedTest() {
+        assertThat(filmStorage).isInstanceOf(InMemoryFilmStorage.class);
+        assertThat(likeStorage).isInstanceOf(InMemoryLikeStorage.class);
+        assertThat(userStorage).isInstanceOf(InMemoryUserStorage.class);
+    }
+
+    @Test
+    public void findFilm_withHugeIdNotFoundTest() {
+        Film film = filmStorage.findFilmById(filmStorage.createFilm(film("Nomadland")));
+        long wrapped = (1L << 44) + film.getId();
+        assertThatThrownBy(() -> filmService.getFilmById(wrapped)).isInstanceOf(IncorrectIdException.class);
+        assertThatThrownBy(() -> filmService.getFilmById(1L << 43)).isInstanceOf(IncorrectIdException.class);
+        assertThatThrownBy(() -> filmService.getFilmById(Long.MAX_VALUE)).isInstanceOf(IncorrectIdException.class);
+        assertThat(filmStorage.findFilmsByIds(List.of(wrapped, film.getId()))).extracting(Film::getId)
+                .containsExactly(film.getId());
+        assertThat(filmService.getFilms(Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    public void createFilms_withUnknownGenreOrRatingStoresNothingTest() {
+        Film withUnknownGenre = film("Minari");
+        withUnknownGenre.setGenres(Set.of(new Genre(999)));
+        Film withUnknownRating = film("Seven");
+        withUnknownRating.setMpa(new Rating(999));
+        assertThatThrownBy(() -> filmService.createFilms(List.of(film("Nomadland"), withUnknownGenre)))
+                .isInstanceOf(IncorrectIdException.class);
+        assertThatThrownBy(() -> filmService.createFilms(List.of(film("Nomadland"), withUnknownRating)))
+                .isInstanceOf(IncorrectIdException.class);
+        assertThatThrownBy(() -> filmService.createFilm(withUnknownGenre)).isInstanceOf(IncorrectIdException.class);
+        assertThat(filmStorage.findAllFilms()).isEmpty();
+    }
+
+    @Test
+    public void createFilm_concurrentlyGetsUniqueIdsTest() throws Exception {
+        int threads = 8;
+        int filmsPerThread = 1_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < filmsPerThread; i++) {
+                        filmStorage.createFilm(film("film " + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<Long> ids = filmStorage.findAllFilms().stream().map(Film::getId).collect(Collectors.toList());
+        assertThat(ids).hasSize(threads * filmsPerThread).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    public void findFilms_pagesSkipDeletedFilmsTest() {
+        List<Long> ids = filmService.createFilms(new ArrayList<>(List.of(film("Dune"), film("Heat"), film("Alien"),
+                film("Fargo"))));
+        filmService.deleteFilmById(ids.get(1));
+        assertThat(filmService.getFilms(0, 2)).extracting(Film::getName).containsExactly("Dune", "Alien");
+        assertThat(filmService.getFilms(ids.get(2), 2)).extracting(Film::getName).containsExactly("Fargo");
+        assertThatThrownBy(() -> filmService.getFilmById(ids.get(1))).isInstanceOf(IncorrectIdException.class)
+                .hasMessageContaining("фильма с id " + ids.get(1) + " не существует!");
+        assertThatThrownBy(() -> filmService.getFilmById(ids.get(3) + 1_000_000))
+                .isInstanceOf(IncorrectIdException.class);
+    }
+
+    @Test
+    public void createFilm_genresAndLikesFilledOnReadTest() {
+        Film dune = film("Dune");
+        dune.setGenres(Set.of(new Genre(2), new Genre(1)));
+        Film film = filmService.createFilm(dune);
+        User first = userService.createUser(user("first"));
+        User second = userService.createUser(user("second"));
+        filmService.addLikeToFilm(film.getId(), first.getId());
+        filmService.addLikeToFilm(film.getId(), second.getId());
+        filmService.addLikeToFilm(film.getId(), second.getId());
+        Film stored = filmService.getFilmById(film.getId());
+        assertThat(stored.getGenres()).extracting(Genre::getName).containsExactly("Комедия", "Драма");
+        assertThat(stored.getMpa().getName()).isEqualTo("PG");
+        assertThat(stored.getLikes()).containsExactlyInAnyOrder(first.getId(), second.getId());
+        stored.getLikes().clear();
+        assertThat(filmService.getFilmById(film.getId()).getLikes()).hasSize(2);
+        userService.deleteUserById(first.getId());
+        assertThat(filmService.getFilmById(film.getId()).getLikes()).containsExactly(second.getId());
+        assertThat(filmService.getTopFilms(1)).extracting(Film::getId).containsExactly(film.getId());
+        assertThatThrownBy(() -> filmService.addLikeToFilm(film.getId() + 100, second.getId()))
+                .isInstanceOf(IncorrectIdException.class);
+    }
+
+    @Test
+    public void addFriend_suggestionsAndDeletionTest() {
+        List<User> users = new ArrayList<>();
+        for (String login : List.of("a", "b", "c", "d", "e")) {
+            users.add(userService.createUser(user(login)));
+        }
+        friends(users.get(0), users.get(1), users.get(2));
+        friends(users.get(3), users.get(1), users.get(2));
+        friends(users.get(4), users.get(2));
+        assertThat(userService.getCommonFriends(users.get(0).getId(), users.get(3).getId()))
+                .extracting(User::getLogin).containsExactly("b", "c");
+        assertThat(userService.getFriendSuggestions(users.get(0).getId(), 10))
+                .extracting(User::getLogin).containsExactly("d", "e");
+        userService.deleteUserById(users.get(2).getId());
+        assertThat(userService.getFriendsList(users.get(0).getId())).extracting(User::getLogin).containsExactly("b");
+        assertThat(userService.getUserById(users.get(4).getId()).getFriendsStatuses()).isEmpty();
+    }
+
+    @Test
+    public void updateUser_keepsFriendsTest() {
+        User first = userService.createUser(user("first"));
+        User second = userService.createUser(user("second"));
+        userService.addFriend(first.getId(), second.getId());
+        User update = user("renamed");
+        update.setId(first.getId());
+        assertThat(userService.updateUser(update).getFriendsStatuses()).containsOnlyKeys(second.getId());
+        User missing = user("missing");
+        missing.setId(second.getId() + 100);
+        assertThatThrownBy(() -> userService.updateUser(missing)).isInstanceOf(IncorrectIdException.class)
+                .hasMessageContaining("пользователя с id " + missing.getId() + " не существует!");
+    }
+
+    private void friends(User user, User... friends) {
+        for (User friend : friends) {
+            userService.addFriend(user.getId(), friend.getId());
+        }
+    }
+
+    private static Film film(String name) {
+        return Film.builder().name(name).description(name).releaseDate(LocalDate.of(2000, 1, 1)).duration(100)
+                .mpa(new Rating(2)).build();
+    }
+
+    private static User user(String login) {
+        return User.builder().email(login + "@mail.ru").login(login).birthday(LocalDate.of(1990, 1, 1)).build();
+    }
+}
@@ -15,7 +15,7 @@ import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
 import ru.yandex.practicum.filmorate.storage.dao.FilmStorageImpl;
-import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorageImpl;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorageImpl;
 
 import java.time.LocalDate;
@@ -31,12 +31,11 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class LikeStorageTest {
     private final FilmStorageImpl filmStorage;
     private final UserStorageImpl userStorage;
-    private final LikeStorage likeStorage;
+    private final LikeStorageImpl likeStorage;
     private final FilmService filmService;
     private Film firstFilm;
 
@@ -101,4 +100,33 @@ public class LikeStorageTest {
         Film actualFilm = filmService.getFilmById(film1Id);
         Assertions.assertTrue(actualFilm.getLikes().isEmpty());
     }
+
+    @Test
+    public void getRecommendedFilmIds_fromUsersWithOverlappingLikesTest() {
+        long[] users = new long[4];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = userStorage.createUser(User.builder().email("user" + i + "@mail.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).friendsStatuses(new HashMap<>()).build()).getId();
+        }
+        long[] films = new long[5];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = filmStorage.createFilm(firstFilm);
+        }
+        likeStorage.addLike(films[0], users[0]);
+        likeStorage.addLike(films[1], users[0]);
+        likeStorage.addLike(films[0], users[1]);
+        likeStorage.addLike(films[1], users[1]);
+        likeStorage.addLike(films[2], users[1]);
+        likeStorage.addLike(films[0], users[2]);
+        likeStorage.addLike(films[3], users[2]);
+        likeStorage.addLike(films[4], users[3]);
+        Assertions.assertArrayEquals(new long[]{films[2], films[3]}, likeStorage.getRecommendedFilmIds(users[0], 10));
+        likeStorage.rebuildIndex();
+        Assertions.assertArrayEquals(new long[]{films[2]}, likeStorage.getRecommendedFilmIds(users[0], 1));
+        likeStorage.deleteLike(films[2], users[1]);
+        Assertions.assertArrayEquals(new long[]{films[3]}, likeStorage.getRecommendedFilmIds(users[0], 10));
+        filmStorage.deleteFilmById(films[3]);
+        Assertions.assertEquals(0, likeStorage.getRecommendedFilmIds(users[0], 10).length);
+        Assertions.assertEquals(0, likeStorage.getRecommendedFilmIds(users[3], 10).length);
+    }
 }
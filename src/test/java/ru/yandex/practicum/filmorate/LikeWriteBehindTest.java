@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.exceptions.LikeQueueFullException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// интервал записи заведомо больше времени теста, поэтому очередь пишется только явным flush
+@SpringBootTest(properties = {"filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.capacity=3",
+        "filmorate.likes.write-behind.flush-interval-ms=600000",
+        "filmorate.likes.write-behind.offer-timeout-ms=50"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class LikeWriteBehindTest {
+    private final FilmService filmService;
+    private final UserService userService;
+    private final LikeStorage likeStorage;
+    private final LikeWriteBehind likeWriteBehind;
+    private final PopularityLeaderboard leaderboard;
+    private Film film;
+    private List<User> users;
+
+    @BeforeEach
+    public void createModels() {
+        film = filmService.createFilm(Film.builder().name("Nomadland").description("Wonderful film")
+                .releaseDate(LocalDate.of(2020, 9, 11)).duration(108).mpa(new Rating(2)).build());
+        users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            users.add(userService.createUser(User.builder().email("user" + i + "@mail.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).build()));
+        }
+    }
+
+    @Test
+    public void addLike_coalescedAndWrittenOnFlushTest() {
+        filmService.addLikeToFilm(film.getId(), userId(0));
+        filmService.deleteLike(film.getId(), userId(0));
+        filmService.addLikeToFilm(film.getId(), userId(1));
+        filmService.addLikeToFilm(film.getId(), userId(1));
+        assertThat(likeWriteBehind.getQueueSize()).isEqualTo(2);
+        assertThat(likeStorage.getLikes(film.getId())).isEmpty();
+        likeWriteBehind.flush();
+        assertThat(likeWriteBehind.getQueueSize()).isZero();
+        assertThat(likeStorage.getLikes(film.getId())).isEqualTo(Set.of(userId(1)));
+        assertThat(filmService.getFilmById(film.getId()).getLikes()).isEqualTo(Set.of(userId(1)));
+        assertThat(leaderboard.getLikes(film.getId())).isEqualTo(1);
+        filmService.deleteLike(film.getId(), userId(1));
+        likeWriteBehind.flush();
+        assertThat(likeStorage.getLikes(film.getId())).isEmpty();
+        assertThat(leaderboard.getLikes(film.getId())).isZero();
+    }
+
+    @Test
+    public void addLike_rejectedWhenQueueIsFullTest() {
+        for (int i = 0; i < 3; i++) {
+            filmService.addLikeToFilm(film.getId(), userId(i));
+        }
+        assertThatThrownBy(() -> filmService.addLikeToFilm(film.getId(), userId(3)))
+                .isInstanceOf(LikeQueueFullException.class);
+        filmService.deleteLike(film.getId(), userId(2));
+        assertThatThrownBy(() -> filmService.addLikeToFilm(film.getId() + 100, userId(3)))
+                .isInstanceOf(IncorrectIdException.class);
+        likeWriteBehind.flush();
+        filmService.addLikeToFilm(film.getId(), userId(3));
+        likeWriteBehind.flush();
+        assertThat(likeStorage.getLikes(film.getId())).isEqualTo(Set.of(userId(0), userId(1), userId(3)));
+        assertThat(leaderboard.getLikes(film.getId())).isEqualTo(3);
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void stop_writesPendingLikesTest() throws InterruptedException {
+        filmService.addLikeToFilm(film.getId(), userId(4));
+        likeWriteBehind.stop();
+        assertThat(likeStorage.getLikes(film.getId())).isEqualTo(Set.of(userId(4)));
+    }
+
+    @Test
+    public void flush_retriedWithBackoffAndStopFailsWhenStorageIsDownTest() throws InterruptedException {
+        LikeStorage brokenStorage = Mockito.mock(LikeStorage.class);
+        Mockito.when(brokenStorage.applyLikes(Mockito.anyList(), Mockito.anyList()))
+                .thenThrow(new CannotGetJdbcConnectionException("база недоступна"));
+        LikeWriteBehind broken = new LikeWriteBehind(brokenStorage, leaderboard, new SimpleMeterRegistry(), true,
+                10, 1, 20, 50, 100);
+        broken.like(film.getId(), userId(0));
+        broken.start();
+        Thread.sleep(500);
+        // без паузы между попытками их были бы тысячи; 20, 40, 80, 160 мс дают не больше пяти
+        Mockito.verify(brokenStorage, Mockito.atMost(6)).applyLikes(Mockito.anyList(), Mockito.anyList());
+        assertThat(broken.getQueueSize()).isEqualTo(1);
+        assertThatThrownBy(broken::stop).isInstanceOf(IllegalStateException.class);
+        assertThat(broken.getQueueSize()).isZero();
+    }
+
+    private long userId(int index) {
+        return users.get(index).getId();
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.exceptions.QueryBudgetExceededException;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementsInterceptor;
+import ru.yandex.practicum.filmorate.metrics.StorageMetricsAspect;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorageImpl;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.containsString;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@AutoConfigureMetrics
+class MetricsTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private FilmStorageImpl filmStorage;
+
+    @AfterEach
+    public void removeFilms() {
+        filmService.deleteAllFilms();
+    }
+
+    @Test
+    public void storageCalls_timedByMethodAndOutcomeTest() {
+        Film film = filmService.createFilm(Film.builder().name("Nomadland").description("Wonderful film")
+                .releaseDate(LocalDate.of(2020, 9, 11)).duration(108).mpa(new Rating(2))
+                .likes(new HashSet<>()).build());
+        filmStorage.findFilmById(film.getId());
+        assertThatThrownBy(() -> filmStorage.findFilmById(film.getId() + 1000))
+                .isInstanceOf(IncorrectIdException.class);
+
+        Timer success = meterRegistry.find(StorageMetricsAspect.TIMER_NAME)
+                .tags("class", "FilmStorageImpl", "method", "findFilmById", "outcome", "success").timer();
+        Timer error = meterRegistry.find(StorageMetricsAspect.TIMER_NAME)
+                .tags("class", "FilmStorageImpl", "method", "findFilmById", "outcome", "error",
+                        "exception", "IncorrectIdException").timer();
+        assertThat(success).isNotNull();
+        assertThat(success.count()).isGreaterThanOrEqualTo(1);
+        assertThat(error).isNotNull();
+        assertThat(error.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void sqlStatements_countedPerRequestTest() throws Exception {
+        filmService.createFilm(Film.builder().name("Nomadland").mpa(new Rating(2)).likes(new HashSet<>()).build());
+        DistributionSummary statements = DistributionSummary.builder(SqlStatementsInterceptor.SUMMARY_NAME)
+                .tags("method", "GET", "uri", "/films").register(meterRegistry);
+        long countBefore = statements.count();
+        double totalBefore = statements.totalAmount();
+        mockMvc.perform(MockMvcRequestBuilders.get("/films")).andExpect(MockMvcResultMatchers.status().isOk());
+
+        // фильмы, их жанры и лайки - по одному запросу независимо от числа фильмов
+        assertThat(statements.count() - countBefore).isEqualTo(1);
+        assertThat(statements.totalAmount() - totalBefore).isEqualTo(3);
+    }
+
+    @Test
+    public void queryBudget_failsOnStatementOverLimitTest() {
+        filmService.createFilm(Film.builder().name("Nomadland").mpa(new Rating(2)).likes(new HashSet<>()).build());
+        Assertions.assertEquals(3, QueryBudget.count(() -> filmStorage.findAllFilms()));
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open(2)) {
+            assertThatThrownBy(() -> filmStorage.findAllFilms()).isInstanceOf(QueryBudgetExceededException.class)
+                    .hasMessageContaining("разрешено 2");
+            assertThat(scope.count()).isEqualTo(3);
+        }
+        Assertions.assertEquals(3, QueryBudget.count(() -> filmStorage.findAllFilms()));
+    }
+
+    @Test
+    public void prometheusEndpoint_exposesFilmorateMetricsTest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/films")).andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content()
+                        .string(containsString("filmorate_storage_calls_seconds_count")))
+                .andExpect(MockMvcResultMatchers.content()
+                        .string(containsString("filmorate_http_sql_statements")));
+    }
+}
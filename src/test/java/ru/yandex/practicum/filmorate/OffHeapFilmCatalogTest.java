@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.film.OffHeapFilmCatalog;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "filmorate.films.off-heap.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+class OffHeapFilmCatalogTest {
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+    private final OffHeapFilmCatalog catalog;
+    private final MeterRegistry meterRegistry;
+    private List<User> users;
+
+    @BeforeEach
+    public void createUsers() {
+        users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(userService.createUser(User.builder().email("user" + i + "@mail.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).build()));
+        }
+    }
+
+    @Test
+    public void getFilmById_servedFromCatalogAndRefreshedOnChangeTest() {
+        Film film = filmService.createFilm(film("Nomadland", Set.of(new Genre(2), new Genre(1))));
+        filmService.addLikeToFilm(film.getId(), users.get(0).getId());
+        assertThat(filmService.getFilmById(film.getId())).isEqualTo(filmStorage.findFilmById(film.getId()));
+        double hits = hits();
+        Film stored = filmService.getFilmById(film.getId());
+        assertThat(hits()).isEqualTo(hits + 1);
+        assertThat(stored.getGenres()).extracting(Genre::getName).containsExactly("Комедия", "Драма");
+        assertThat(stored.getMpa().getName()).isEqualTo("PG");
+        assertThat(stored.getLikes()).containsExactly(users.get(0).getId());
+
+        Film update = film("Минари", Set.of(new Genre(6)));
+        update.setId(film.getId());
+        update.setDescription(null);
+        filmService.updateFilm(update);
+        filmService.addLikeToFilm(film.getId(), users.get(1).getId());
+        stored = filmService.getFilmById(film.getId());
+        assertThat(stored.getName()).isEqualTo("Минари");
+        assertThat(stored.getDescription()).isNull();
+        assertThat(stored.getGenres()).extracting(Genre::getName).containsExactly("Боевик");
+        assertThat(stored.getLikes()).containsExactlyInAnyOrder(users.get(0).getId(), users.get(1).getId());
+
+        userService.deleteUserById(users.get(0).getId());
+        assertThat(filmService.getFilmById(film.getId()).getLikes()).containsExactly(users.get(1).getId());
+        filmService.deleteFilmById(film.getId());
+        assertThatThrownBy(() -> filmService.getFilmById(film.getId())).isInstanceOf(IncorrectIdException.class)
+                .hasMessageContaining("фильма с id " + film.getId() + " не существует!");
+    }
+
+    @Test
+    public void getTopFilms_servedFromCatalogTest() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(filmService.createFilm(film("Film " + i, Set.of(new Genre(i + 1)))).getId());
+        }
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j <= i; j++) {
+                filmService.addLikeToFilm(ids.get(i), users.get(j).getId());
+            }
+        }
+        catalog.rebuild();
+        double hits = hits();
+        List<Film> top = filmService.getTopFilms(2);
+        assertThat(hits()).isEqualTo(hits + 2);
+        assertThat(top).extracting(Film::getId).containsExactly(ids.get(2), ids.get(1));
+        assertThat(top).isEqualTo(filmStorage.findFilmsByIds(List.of(ids.get(2), ids.get(1))));
+        assertThat(filmService.getTopFilms(3, 1, null).stream().map(Film::getName).collect(Collectors.toList()))
+                .containsExactly("Film 0");
+        assertThat(catalog.getMemoryUsed()).isPositive();
+    }
+
+    private double hits() {
+        return meterRegistry.get(OffHeapFilmCatalog.REQUESTS_COUNTER_NAME).tag("result", "hit").counter().count();
+    }
+
+    private static Film film(String name, Set<Genre> genres) {
+        return Film.builder().name(name).description("Wonderful film").releaseDate(LocalDate.of(2020, 9, 11))
+                .duration(108).mpa(new Rating(2)).genres(genres).build();
+    }
+}
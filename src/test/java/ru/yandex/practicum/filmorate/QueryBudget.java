@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementsInterceptor;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки бюджета SQL-запросов: {@code response.andExpect(QueryBudget.atMost(3))} для MockMvc
+ * и {@code QueryBudget.atMost(2, () -> storage.findAllFilms())} для вызовов внутри теста.
+ */
+public final class QueryBudget {
+    private QueryBudget() {
+    }
+
+    public static ResultMatcher atMost(int statements) {
+        return result -> {
+            Integer actual = (Integer) result.getRequest().getAttribute(SqlStatementsInterceptor.STATEMENTS_ATTRIBUTE);
+            assertThat(actual).as("число SQL-запросов не записано").isNotNull();
+            assertThat(actual).as("SQL-запросов на " + result.getRequest().getRequestURI())
+                    .isLessThanOrEqualTo(statements);
+        };
+    }
+
+    public static <T> T atMost(int statements, Supplier<T> action) {
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+            T result = action.get();
+            assertThat(scope.count()).as("SQL-запросов").isLessThanOrEqualTo(statements);
+            return result;
+        }
+    }
+
+    public static int count(Runnable action) {
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+            action.run();
+            return scope.count();
+        }
+    }
+}
@@ -6,10 +6,11 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.Rating;
-import ru.yandex.practicum.filmorate.storage.dao.RatingStorage;
+import ru.yandex.practicum.filmorate.storage.dao.RatingStorageImpl;
 
 import java.util.List;
 
@@ -19,10 +20,10 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class RatingStorageTest {
-    private final RatingStorage ratingStorage;
+    private final RatingStorageImpl ratingStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void getAllRatings_Test() {
@@ -46,4 +47,27 @@ public class RatingStorageTest {
         assertThatThrownBy(() -> ratingStorage.findRatingById(100)).isInstanceOf(IncorrectIdException.class)
                 .hasMessageContaining("рейтинга с id " + 100 + " не существует!");
     }
+
+    @Test
+    public void getRatingById_servedFromDirectoryWithoutQueriesTest() {
+        Rating rating = ratingStorage.findRatingById(2);
+        Assertions.assertEquals(0, QueryBudget.count(() -> assertThat(ratingStorage.findRatingById(2))
+                .isSameAs(rating)));
+        Assertions.assertEquals(0, QueryBudget.count(() -> assertThatThrownBy(() -> ratingStorage.findRatingById(100))
+                .isInstanceOf(IncorrectIdException.class)));
+    }
+
+    @Test
+    public void getRatingById_newRatingFoundAfterRefreshTest() {
+        jdbcTemplate.update("insert into rating(rating_id, rating) values (6, 'G')");
+        try {
+            assertThatThrownBy(() -> ratingStorage.findRatingById(6)).isInstanceOf(IncorrectIdException.class);
+            ratingStorage.refresh();
+            assertThat(ratingStorage.findRatingById(6)).hasFieldOrPropertyWithValue("name", "G");
+        } finally {
+            jdbcTemplate.update("delete from rating where rating_id = 6");
+            ratingStorage.refresh();
+        }
+        assertThatThrownBy(() -> ratingStorage.findRatingById(6)).isInstanceOf(IncorrectIdException.class);
+    }
 }
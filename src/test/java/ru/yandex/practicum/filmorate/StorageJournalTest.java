@@ -0,0 +1,154 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendStatus;
+import ru.yandex.practicum.filmorate.storage.dao.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.dao.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryDatabase;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryFriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryRatingStorage;
+import ru.yandex.practicum.filmorate.storage.dao.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.dao.StorageJournal;
+import ru.yandex.practicum.filmorate.storage.dao.UserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// хранилища собираются вручную, чтобы "перезапускать" их на том же каталоге в пределах одного теста
+class StorageJournalTest {
+    @TempDir
+    Path dir;
+
+    private InMemoryDatabase database;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private GenreStorage genreStorage;
+    private LikeStorage likeStorage;
+    private FriendshipStorage friendshipStorage;
+
+    @AfterEach
+    public void close() throws InterruptedException {
+        database.stop();
+    }
+
+    @Test
+    public void start_replaysJournalTest() throws Exception {
+        open(StorageJournal.FsyncPolicy.ALWAYS);
+        long dune = createFilm("Dune", Set.of(new Genre(2), new Genre(1)));
+        long heat = createFilm("Heat", Set.of());
+        long first = userStorage.createUser(user("first")).getId();
+        long second = userStorage.createUser(user("second")).getId();
+        long third = userStorage.createUser(user("third")).getId();
+        likeStorage.addLike(dune, first);
+        likeStorage.addLike(dune, second);
+        likeStorage.addLike(heat, second);
+        likeStorage.deleteLike(dune, first);
+        friendshipStorage.addFriend(first, second, FriendStatus.CONFIRMED);
+        friendshipStorage.addFriend(first, third, FriendStatus.UNCONFIRMED);
+        userStorage.deleteUserById(third);
+        filmStorage.deleteFilmById(heat);
+        restart();
+        Film stored = filmStorage.findFilmById(dune);
+        assertThat(stored.getName()).isEqualTo("Dune");
+        assertThat(stored.getMpa().getName()).isEqualTo("PG");
+        assertThat(stored.getGenres()).extracting(Genre::getName).containsExactly("Комедия", "Драма");
+        assertThat(stored.getLikes()).containsExactly(second);
+        assertThat(filmStorage.findAllFilms()).extracting(Film::getId).containsExactly(dune);
+        assertThat(userStorage.findUserById(first).getFriendsStatuses())
+                .isEqualTo(Map.of(second, FriendStatus.CONFIRMED));
+        assertThat(userStorage.findAllUsers()).extracting(User::getLogin).containsExactly("first", "second");
+        assertThat(createFilm("Alien", Set.of())).isGreaterThan(heat);
+    }
+
+    @Test
+    public void snapshot_replacesOldJournalTest() throws Exception {
+        open(StorageJournal.FsyncPolicy.INTERVAL);
+        long user = userStorage.createUser(user("first")).getId();
+        long dune = createFilm("Dune", Set.of(new Genre(3)));
+        likeStorage.addLike(dune, user);
+        database.snapshot();
+        long heat = createFilm("Heat", Set.of());
+        likeStorage.addLike(heat, user);
+        genreStorage.updateGenres(dune, Set.of(new Genre(4)));
+        restart();
+        assertThat(filmStorage.findAllFilms()).extracting(Film::getName).containsExactly("Dune", "Heat");
+        assertThat(filmStorage.findFilmById(dune).getGenres()).extracting(Genre::getName).containsExactly("Триллер");
+        assertThat(likeStorage.getLikedFilmIds(user)).containsExactlyInAnyOrder(dune, heat);
+        assertThat(files()).containsExactly("journal-00000000000000000002.log", "journal-00000000000000000003.log",
+                "snapshot-00000000000000000002.bin");
+    }
+
+    @Test
+    public void start_ignoresTornJournalTailTest() throws Exception {
+        open(StorageJournal.FsyncPolicy.ALWAYS);
+        long dune = createFilm("Dune", Set.of());
+        database.stop();
+        Path journal = dir.resolve("journal-00000000000000000001.log");
+        Files.write(journal, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        long size = Files.size(journal);
+        open(StorageJournal.FsyncPolicy.ALWAYS);
+        assertThat(Files.size(journal)).isEqualTo(size - 7);
+        assertThat(filmStorage.findFilmById(dune).getName()).isEqualTo("Dune");
+        long heat = createFilm("Heat", Set.of());
+        restart();
+        assertThat(filmStorage.findAllFilms()).extracting(Film::getId).containsExactly(dune, heat);
+    }
+
+    private void open(StorageJournal.FsyncPolicy fsync) throws IOException {
+        StorageJournal journal = new StorageJournal(true, dir.toString(), fsync, 10);
+        database = new InMemoryDatabase(journal, 600_000, 1_000_000);
+        database.start();
+        EntityVersions versions = new EntityVersions(new ConcurrentMapCacheManager("films", "users"));
+        genreStorage = new InMemoryGenreStorage(database, versions);
+        filmStorage = new InMemoryFilmStorage(database, new InMemoryRatingStorage(), genreStorage, versions);
+        userStorage = new InMemoryUserStorage(database, versions);
+        likeStorage = new InMemoryLikeStorage(database, versions);
+        friendshipStorage = new InMemoryFriendshipStorage(database, versions);
+    }
+
+    private void restart() throws Exception {
+        database.stop();
+        open(StorageJournal.FsyncPolicy.ALWAYS);
+    }
+
+    private long createFilm(String name, Set<Genre> genres) {
+        Film film = Film.builder().name(name).description(name).releaseDate(LocalDate.of(2000, 1, 1)).duration(100)
+                .mpa(new Rating(2)).genres(genres).build();
+        long id = filmStorage.createFilm(film);
+        genreStorage.createGenres(id, film);
+        return id;
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static User user(String login) {
+        return User.builder().email(login + "@mail.ru").login(login).birthday(LocalDate.of(1990, 1, 1)).build();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestExecutionListener;
+import org.springframework.test.context.jdbc.SqlScriptsTestExecutionListener;
+import ru.yandex.practicum.filmorate.service.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.film.OffHeapFilmCatalog;
+import ru.yandex.practicum.filmorate.service.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.dao.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorageImpl;
+import ru.yandex.practicum.filmorate.storage.dao.LikeStorageImpl;
+
+import java.util.Objects;
+
+// тесты пересоздают таблицы sql-скриптами в обход приложения, поэтому кеши и индексы в памяти сбрасываются
+// после выполнения этих скриптов, перед каждым тестовым методом
+public class StorageStateResetListener implements TestExecutionListener, Ordered {
+    @Override
+    public int getOrder() {
+        return new SqlScriptsTestExecutionListener().getOrder() + 1;
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        ApplicationContext context = testContext.getApplicationContext();
+        context.getBeanProvider(CacheManager.class).ifAvailable(cacheManager -> cacheManager.getCacheNames()
+                .forEach(name -> Objects.requireNonNull(cacheManager.getCache(name)).clear()));
+        context.getBeanProvider(PopularityLeaderboard.class).ifAvailable(PopularityLeaderboard::rebuild);
+        context.getBeanProvider(FilmSearchIndex.class).ifAvailable(FilmSearchIndex::rebuild);
+        context.getBeanProvider(FriendshipStorageImpl.class).ifAvailable(FriendshipStorageImpl::rebuildIndex);
+        context.getBeanProvider(LikeStorageImpl.class).ifAvailable(LikeStorageImpl::rebuildIndex);
+        context.getBeanProvider(EntityVersions.class).ifAvailable(EntityVersions::reset);
+        context.getBeanProvider(OffHeapFilmCatalog.class).ifAvailable(OffHeapFilmCatalog::rebuild);
+    }
+}
@@ -8,14 +8,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import ru.yandex.practicum.filmorate.controllers.UserController;
 import ru.yandex.practicum.filmorate.exceptions.ResponseExceptionHandler;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
 import ru.yandex.practicum.filmorate.service.user.UserService;
 
 import java.time.LocalDate;
@@ -24,6 +29,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest
 @AutoConfigureMockMvc
 @AutoConfigureTestDatabase
@@ -33,6 +40,8 @@ class UserControllerTest {
     @Autowired
     private UserService service;
     @Autowired
+    private FilmService filmService;
+    @Autowired
     private MockMvc mockMvc;
     @Autowired
     private ObjectMapper objectMapper;
@@ -62,6 +71,7 @@ class UserControllerTest {
         ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user1.getId()));
         response.andExpect(MockMvcResultMatchers.status().isOk());
         response.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(user1)));
+        response.andExpect(QueryBudget.atMost(2));
     }
 
     @Test
@@ -187,6 +197,7 @@ class UserControllerTest {
         ResultActions response = mockMvc.perform(MockMvcRequestBuilders.get("/users"));
         response.andExpect(MockMvcResultMatchers.status().is(200));
         response.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(usersList)));
+        response.andExpect(QueryBudget.atMost(2));
     }
 
     @Test
@@ -203,6 +214,7 @@ class UserControllerTest {
                 .content(objectMapper.writeValueAsString(userUpdate)));
         putResponse.andExpect(MockMvcResultMatchers.status().is(200));
         putResponse.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(userUpdate)));
+        putResponse.andExpect(QueryBudget.atMost(4));
         ResultActions getResponse = mockMvc.perform(MockMvcRequestBuilders.get("/users"));
         getResponse.andExpect(MockMvcResultMatchers.status().is(200));
         getResponse.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(usersList)));
@@ -275,8 +287,156 @@ class UserControllerTest {
                 "Ошибка при указании id фильма/пользователя", "errorMessage", "пользователя с id " + userUp.getId() + " не существует!"))));
     }
 
+    @Test
+    public void getUsers_withKeysetPaginationTest() throws Exception {
+        User firstUser = service.createUser(user1);
+        User secondUser = service.createUser(user2);
+        ResultActions firstPage = mockMvc.perform(MockMvcRequestBuilders.get("/users").param("limit", "1"));
+        firstPage.andExpect(MockMvcResultMatchers.status().isOk());
+        firstPage.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(firstUser))));
+        String cursor = firstPage.andReturn().getResponse().getHeader("X-Next-Cursor");
+        ResultActions secondPage = mockMvc.perform(MockMvcRequestBuilders.get("/users")
+                .param("after", cursor).param("limit", "5"));
+        secondPage.andExpect(MockMvcResultMatchers.content().json(objectMapper.writeValueAsString(List.of(secondUser))));
+        secondPage.andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getFriends_queryBudgetDoesNotDependOnFriendsCountTest() throws Exception {
+        User user = service.createUser(user1);
+        User other = service.createUser(user2);
+        for (int i = 0; i < 10; i++) {
+            User friend = service.createUser(User.builder().email("friend" + i + "@mail.ru").login("friend" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).build());
+            service.addFriend(user.getId(), friend.getId());
+            service.addFriend(other.getId(), friend.getId());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/friends"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(10))
+                .andExpect(QueryBudget.atMost(3));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/friends/common/" + other.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(10))
+                .andExpect(QueryBudget.atMost(4));
+    }
+
+    @Test
+    public void getFriends_notModifiedUntilFriendChangesTest() throws Exception {
+        User user = service.createUser(user1);
+        User friend = service.createUser(user2);
+        service.addFriend(user.getId(), friend.getId());
+        String uri = "/users/" + user.getId() + "/friends";
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get(uri))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(MockMvcRequestBuilders.get(uri).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(QueryBudget.atMost(0));
+        friend.setName("Sergey Fix");
+        service.updateUser(friend);
+        String changedETag = mockMvc.perform(MockMvcRequestBuilders.get(uri).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value("Sergey Fix"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(changedETag).isNotEqualTo(eTag);
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + friend.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, changedETag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        service.deleteFriend(user.getId(), friend.getId());
+        mockMvc.perform(MockMvcRequestBuilders.get(uri).header(HttpHeaders.IF_NONE_MATCH, changedETag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    @Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void deleteUser_changesOnlyRelatedETagsTest() throws Exception {
+        User deleted = service.createUser(user1);
+        User follower = service.createUser(user2);
+        User stranger = service.createUser(User.builder().email("stranger@mail.ru").login("stranger")
+                .birthday(LocalDate.of(1990, 1, 1)).build());
+        Film liked = filmService.createFilm(Film.builder().name("Nomadland").mpa(new Rating(2)).build());
+        Film other = filmService.createFilm(Film.builder().name("Minari").mpa(new Rating(3)).build());
+        service.addFriend(follower.getId(), deleted.getId());
+        filmService.addLikeToFilm(liked.getId(), deleted.getId());
+        Map<String, String> eTags = new HashMap<>();
+        for (String uri : List.of("/users/" + follower.getId(), "/users/" + stranger.getId(),
+                "/films/" + liked.getId(), "/films/" + other.getId())) {
+            eTags.put(uri, mockMvc.perform(MockMvcRequestBuilders.get(uri))
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG));
+        }
+        service.deleteUserById(deleted.getId());
+        expectStatus("/users/" + follower.getId(), eTags, 200);
+        expectStatus("/films/" + liked.getId(), eTags, 200);
+        expectStatus("/users/" + stranger.getId(), eTags, 304);
+        expectStatus("/films/" + other.getId(), eTags, 304);
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + stranger.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    public void getFriendSuggestions_queryBudgetAndLimitTest() throws Exception {
+        User user = service.createUser(user1);
+        User other = service.createUser(user2);
+        for (int i = 0; i < 10; i++) {
+            User friend = service.createUser(User.builder().email("friend" + i + "@mail.ru").login("friend" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).build());
+            service.addFriend(user.getId(), friend.getId());
+            service.addFriend(other.getId(), friend.getId());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/friends/suggestions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(other.getId()))
+                .andExpect(QueryBudget.atMost(4));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/friends/suggestions")
+                        .param("limit", "0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/9999/friends/suggestions"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    // тест создает фильмы, поэтому таблицы очищаются, чтобы id фильмов в FilmControllerTest снова шли с 1
+    @Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    public void getRecommendations_queryBudgetAndLimitTest() throws Exception {
+        User user = service.createUser(user1);
+        User other = service.createUser(user2);
+        Film liked = filmService.createFilm(Film.builder().name("Nomadland").mpa(new Rating(2)).build());
+        Film recommended = filmService.createFilm(Film.builder().name("Minari").mpa(new Rating(3)).build());
+        filmService.addLikeToFilm(liked.getId(), user.getId());
+        filmService.addLikeToFilm(liked.getId(), other.getId());
+        filmService.addLikeToFilm(recommended.getId(), other.getId());
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/recommendations"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(recommended.getId()))
+                .andExpect(QueryBudget.atMost(5));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/" + user.getId() + "/recommendations")
+                        .param("count", "0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void createUsers_inBatchTest() throws Exception {
+        User userWithoutName = User.builder().email("myEm.2020@mail.ru").login("realGangsta").build();
+        ResultActions response = mockMvc.perform(MockMvcRequestBuilders.post("/users/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(user1, userWithoutName))));
+        response.andExpect(MockMvcResultMatchers.status().is(201));
+        Long[] ids = objectMapper.readValue(response.andReturn().getResponse().getContentAsString(), Long[].class);
+        ResultActions getResponse = mockMvc.perform(MockMvcRequestBuilders.get("/users/" + ids[1]));
+        getResponse.andExpect(MockMvcResultMatchers.jsonPath("$.login").value("realGangsta"));
+        getResponse.andExpect(MockMvcResultMatchers.jsonPath("$.name").value("realGangsta"));
+    }
+
     private void addUsersForUpdate() throws Exception {
         service.createUser(user1);
         service.createUser(user2);
     }
+
+    private void expectStatus(String uri, Map<String, String> eTags, int status) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get(uri).header(HttpHeaders.IF_NONE_MATCH, eTags.get(uri)))
+                .andExpect(MockMvcResultMatchers.status().is(status));
+    }
 }
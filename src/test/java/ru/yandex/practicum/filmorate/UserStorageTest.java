@@ -11,12 +11,14 @@ import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectIdException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.user.UserService;
-import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FriendshipStorageImpl;
 import ru.yandex.practicum.filmorate.storage.dao.UserStorageImpl;
 
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -25,11 +27,10 @@ import static ru.yandex.practicum.filmorate.model.enums.FriendStatus.CONFIRMED;
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Sql(value = {"/schema.sql", "/data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
-@Sql(value = {"/deleteBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+@Sql(value = {"/clearBd.sql"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
 public class UserStorageTest {
     private final UserStorageImpl userStorage;
-    private final FriendshipStorage friendshipStorage;
+    private final FriendshipStorageImpl friendshipStorage;
     private final UserService userService;
     private User firstUser;
     private User secondUser;
@@ -165,6 +166,19 @@ public class UserStorageTest {
         assertThat(friends.get(1)).hasFieldOrPropertyWithValue("login", "Segg");
     }
 
+    @Test
+    public void getFriendsList_withFriendsStatusesOfEachFriendTest() {
+        User user1 = userStorage.createUser(firstUser);
+        User user2 = userStorage.createUser(secondUser);
+        User user3 = userStorage.createUser(thirdUser);
+        friendshipStorage.addFriend(user3.getId(), user1.getId(), CONFIRMED);
+        friendshipStorage.addFriend(user3.getId(), user2.getId(), CONFIRMED);
+        friendshipStorage.addFriend(user1.getId(), user2.getId(), CONFIRMED);
+        List<User> friends = userStorage.getFriendsList(user3.getId());
+        assertThat(friends.get(0)).hasFieldOrPropertyWithValue("friendsStatuses", Map.of(user2.getId(), CONFIRMED));
+        assertThat(friends.get(1)).hasFieldOrPropertyWithValue("friendsStatuses", new HashMap<>());
+    }
+
     @Test
     public void getCommonFriends_whenCommonFriendsListIsEmptyTest() {
         User user1 = userStorage.createUser(firstUser);
@@ -186,4 +200,53 @@ public class UserStorageTest {
         List<User> commonFriends = userStorage.getCommonFriends(user3.getId(), user2.getId());
         assertThat(commonFriends.get(0)).hasFieldOrPropertyWithValue("login", "myLog");
     }
+
+    @Test
+    public void getCommonFriends_afterFriendAndUserDeletedTest() {
+        User user1 = userStorage.createUser(firstUser);
+        User user2 = userStorage.createUser(secondUser);
+        User user3 = userStorage.createUser(thirdUser);
+        User user4 = userStorage.createUser(User.builder().email("fourth@mail.ru").login("Fourth")
+                .birthday(LocalDate.of(1990, 1, 1)).friendsStatuses(new HashMap<>()).build());
+        friendshipStorage.addFriend(user3.getId(), user4.getId(), CONFIRMED);
+        friendshipStorage.addFriend(user3.getId(), user1.getId(), CONFIRMED);
+        friendshipStorage.addFriend(user2.getId(), user1.getId(), CONFIRMED);
+        friendshipStorage.addFriend(user2.getId(), user4.getId(), CONFIRMED);
+        friendshipStorage.rebuildIndex();
+        List<User> commonFriends = userStorage.getCommonFriends(user3.getId(), user2.getId());
+        Assertions.assertEquals(List.of(user1.getId(), user4.getId()),
+                commonFriends.stream().map(User::getId).collect(Collectors.toList()));
+        friendshipStorage.deleteFriend(user3.getId(), user4.getId());
+        List<User> afterDeleteFriend = userStorage.getCommonFriends(user3.getId(), user2.getId());
+        Assertions.assertEquals(1, afterDeleteFriend.size());
+        assertThat(afterDeleteFriend.get(0)).hasFieldOrPropertyWithValue("login", "myLog");
+        userStorage.deleteUserById(user1.getId());
+        Assertions.assertTrue(userStorage.getCommonFriends(user3.getId(), user2.getId()).isEmpty());
+        Assertions.assertEquals(List.of(user4), userStorage.getFriendsList(user2.getId()));
+    }
+
+    @Test
+    public void getFriendSuggestions_rankedByMutualFriendsTest() {
+        long[] ids = new long[7];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = userStorage.createUser(User.builder().email("user" + i + "@mail.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1 + i)).friendsStatuses(new HashMap<>()).build()).getId();
+        }
+        long user = ids[0];
+        for (int i = 1; i <= 3; i++) {
+            friendshipStorage.addFriend(user, ids[i], CONFIRMED);
+            friendshipStorage.addFriend(ids[4], ids[i], CONFIRMED);
+        }
+        friendshipStorage.addFriend(ids[1], ids[2], CONFIRMED);
+        friendshipStorage.addFriend(ids[6], ids[1], CONFIRMED);
+        friendshipStorage.addFriend(ids[6], ids[2], CONFIRMED);
+        friendshipStorage.addFriend(ids[5], ids[3], CONFIRMED);
+        Assertions.assertEquals(List.of(ids[4], ids[6], ids[5]), userStorage.getFriendSuggestions(user, 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(ids[4], ids[6]), userStorage.getFriendSuggestions(user, 2).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        friendshipStorage.addFriend(user, ids[4], CONFIRMED);
+        Assertions.assertEquals(List.of(ids[6], ids[5]), userStorage.getFriendSuggestions(user, 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+    }
 }
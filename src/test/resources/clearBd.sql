@@ -0,0 +1,7 @@
+DELETE FROM likes;
+DELETE FROM films_genres;
+DELETE FROM friendship_statuses;
+DELETE FROM films;
+DELETE FROM users;
+ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1;
+ALTER TABLE users ALTER COLUMN user_id RESTART WITH 1;
\ No newline at end of file